@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+# Measures how quickly a freshly started backend accepts its first WebSocket connection, and how much memory
+# it uses at that point. Used for the startup numbers in the README ("Startup modes").
+#
+# Usage: scripts/measure-startup.sh [-n runs] [-u url] -- <command that starts the backend in the foreground>
+#   e.g. scripts/measure-startup.sh -n 5 -- java -jar target/chat-0.0.1-SNAPSHOT-0.0.1-SNAPSHOT.jar
+#
+# For every run it prints the time from launching the command to the first "101 Switching Protocols" answer
+# on the native WebSocket endpoint, and the resident set size (VmRSS) of the process at that moment.
+# The command must be the backend process itself (java ... or the native executable), not a wrapper script,
+# so that its RSS can be read from /proc.
+set -euo pipefail
+
+runs=3
+url="http://localhost:8080/ws-native"
+while [[ $# -gt 0 && "$1" != "--" ]]; do
+    case "$1" in
+        -n) runs="$2"; shift 2 ;;
+        -u) url="$2"; shift 2 ;;
+        *) echo "Unknown option $1" >&2; exit 2 ;;
+    esac
+done
+shift # The "--".
+if [[ $# -eq 0 ]]; then
+    echo "Usage: $0 [-n runs] [-u url] -- <command>" >&2
+    exit 2
+fi
+
+# A WebSocket upgrade request. Prints the status code and the seconds until the answer arrived; curl then
+# waits on the upgraded connection until --max-time, which is why the answer time is taken from curl itself.
+handshake() {
+    curl -s -o /dev/null -w '%{http_code} %{time_starttransfer}' --max-time 2 --http1.1 \
+        -H 'Connection: Upgrade' -H 'Upgrade: websocket' -H 'Sec-WebSocket-Version: 13' \
+        -H 'Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==' "$url" || true
+}
+
+for ((run = 1; run <= runs; run++)); do
+    start=$(date +%s%N)
+    "$@" > "startup-run-$run.log" 2>&1 &
+    pid=$!
+    while true; do
+        attempt=$(date +%s%N)
+        read -r status answer_seconds <<< "$(handshake)"
+        if [[ "$status" == "101" ]]; then
+            break
+        fi
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "run $run: the backend exited, see startup-run-$run.log" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    rss_kb=$(awk '/^VmRSS:/ { print $2 }' "/proc/$pid/status")
+    elapsed_ms=$(awk -v attempt="$attempt" -v start="$start" -v answer="$answer_seconds" \
+        'BEGIN { printf "%d", (attempt - start) / 1000000 + answer * 1000 }')
+    echo "run $run: first WebSocket accepted after ${elapsed_ms} ms, RSS $((rss_kb / 1024)) MiB"
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+done
@@ -0,0 +1,131 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.config.WebSocketConfig;
+import com.example.chat.websocket.SendRateLimitInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of chat messages through the client inbound channel, while every handled message blocks on a slow
+ * database call, the way a @MessageMapping method waiting on MongoDB does. Each operation sends one message per
+ * sender and ends once all of them were handled, so a pool that is too small shows up as a longer operation.
+ *
+ * The channel's executor is the one WebSocketConfig#configureClientInboundChannel registers, built from the same
+ * chat.websocket.inbound.* settings, where 0 keeps Spring's default. Compare pool sizes, or virtual threads, with:
+ *   mvn -Pjmh -DskipTests verify -Djmh.args="ChannelExecutor -p corePoolSize=0,16 -p virtualThreads=false,true"
+ * Virtual threads need Java 21+; on older JVMs WebSocketConfig logs a warning and keeps the thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ChannelExecutorBenchmark {
+
+    // chat.websocket.inbound.*
+    @Param("0")
+    public int corePoolSize;
+    @Param("0")
+    public int maxPoolSize;
+    @Param("0")
+    public int queueCapacity;
+
+    // spring.threads.virtual.enabled
+    @Param("false")
+    public boolean virtualThreads;
+
+    @Param("200")
+    public int senders;
+
+    @Param("20")
+    public long dbLatencyMillis;
+
+    private TaskExecutor executor;
+    private ExecutorSubscribableChannel channel;
+    private volatile CountDownLatch handled;
+
+    @Setup
+    public void setUp() {
+        WebSocketConfig config = new WebSocketConfig();
+        ReflectionTestUtils.setField(config, "environment",
+                new MockEnvironment().withProperty("spring.threads.virtual.enabled", String.valueOf(virtualThreads)));
+        ReflectionTestUtils.setField(config, "sendRateLimitInterceptor", new SendRateLimitInterceptor());
+        ReflectionTestUtils.setField(config, "inboundCorePoolSize", corePoolSize);
+        ReflectionTestUtils.setField(config, "inboundMaxPoolSize", maxPoolSize);
+        ReflectionTestUtils.setField(config, "inboundQueueCapacity", queueCapacity);
+
+        InboundChannelRegistration registration = new InboundChannelRegistration();
+        config.configureClientInboundChannel(registration);
+        executor = registration.executor();
+
+        channel = new ExecutorSubscribableChannel(executor);
+        channel.subscribe(message -> {
+            sleep(dbLatencyMillis); // The blocking repository call.
+            handled.countDown();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        handled = new CountDownLatch(senders);
+        // Sending only enqueues, so this thread plays every sender without waiting for the handlers.
+        for (int s = 0; s < senders; s++) {
+            channel.send(MessageBuilder.withPayload("hello").build());
+        }
+        handled.await();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Builds the registered executor the way Spring's AbstractMessageBrokerConfiguration does for the
+    // clientInboundChannel bean, which then initializes it. WebSocketConfig always registers an executor, so the
+    // fallback is never used.
+    private static final class InboundChannelRegistration extends ChannelRegistration {
+
+        TaskExecutor executor() {
+            TaskExecutor executor = getTaskExecutor(ThreadPoolTaskExecutor::new, e -> {
+                if (e instanceof ThreadPoolTaskExecutor pool) {
+                    pool.setThreadNamePrefix("clientInboundChannel-");
+                }
+            });
+            if (executor instanceof ThreadPoolTaskExecutor pool) {
+                pool.initialize();
+            }
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.broker.RoomFanoutBroker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One broadcast through {@link RoomFanoutBroker} to N subscribed in-memory sessions, measured until every session
+ * has been handed its frame. The sessions' outbound channel only counts frames, so this is the broker's own cost:
+ * subscriber lookup, shard hand-off and building one STOMP frame per session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FanoutBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int sessions;
+
+    // Delivery shards; 0 means one per core, as in production.
+    @Param({"0"})
+    public int shards;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private RoomFanoutBroker broker;
+    private Message<byte[]> broadcast;
+    private long expected;
+
+    @Setup
+    public void setUp() {
+        broker = new RoomFanoutBroker(new ExecutorSubscribableChannel(), (message, timeout) -> {
+            delivered.incrementAndGet();
+            return true;
+        }, new ExecutorSubscribableChannel(), new MappingJackson2MessageConverter(), shards, 10_000);
+        broker.start();
+        for (int i = 0; i < sessions; i++) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            accessor.setSessionId("session-" + i);
+            accessor.setSubscriptionId("sub-0");
+            accessor.setDestination("/topic/public");
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/public");
+        byte[] payload = ("{\"id\":\"6650c1f2a1b2c3d4e5f60718\",\"roomId\":\"public\",\"sender\":\"alice\","
+                + "\"content\":\"Hello everyone!\",\"timestamp\":\"2024-05-24T10:15:30.123\"}").getBytes(StandardCharsets.UTF_8);
+        broadcast = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public long broadcastToAllSessions() {
+        expected += sessions;
+        broker.handleMessage(broadcast);
+        while (delivered.get() < expected) {
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+}
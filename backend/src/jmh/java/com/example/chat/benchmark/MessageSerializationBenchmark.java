@@ -0,0 +1,79 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of a chat {@link Message}, including its LocalDateTime timestamp, with an ObjectMapper
+ * configured the way Spring Boot configures the application's (JavaTimeModule, ISO-8601 dates).
+ * Also measures the messaging converter call that SimpMessagingTemplate makes once per broadcast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private MappingJackson2MessageConverter messageConverter;
+    private Message message;
+    private byte[] json;
+    private MessageHeaders broadcastHeaders;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        messageConverter = new MappingJackson2MessageConverter();
+        messageConverter.setObjectMapper(objectMapper);
+
+        message = new Message("alice", "Hello everyone, the deploy went fine and the chat is back up!");
+        message.setId(new ObjectId().toHexString());
+        message.setRoomId("public");
+        message.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        json = objectMapper.writeValueAsBytes(message);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/public");
+        broadcastHeaders = accessor.getMessageHeaders();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message deserialize() throws Exception {
+        return objectMapper.readValue(json, Message.class);
+    }
+
+    @Benchmark
+    public Object convertForBroadcast() {
+        return messageConverter.toMessage(message, broadcastHeaders);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.cache.RecentMessageCache;
+import com.example.chat.controller.ChatController;
+import com.example.chat.model.Message;
+import com.example.chat.persistence.MessageWriteBehindQueue;
+import com.example.chat.search.MessageSearchIndex;
+import com.example.chat.service.ChatBroadcastService;
+import com.example.chat.service.MessageHistoryService;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full ChatController#sendMessage path (id and timestamp assignment, JSON conversion and hand-off to the broker
+ * channel, recent-message cache append, write-behind enqueue) with MongoDB stubbed out.
+ * The broker channel is a sink, so broker fan-out is measured separately by {@link FanoutBenchmark}. Blackholes
+ * are not thread-safe, so the sink hands each message to the Blackhole of the benchmark thread that sent it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4) // Several inbound-channel threads send at once, as in production.
+public class SendMessageBenchmark {
+
+    private ChatController controller;
+    private final ThreadLocal<Blackhole> sink = new ThreadLocal<>();
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        RecentMessageCache cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "capacity", 1000);
+        ReflectionTestUtils.setField(cache, "maxBytesPerRoom", 8L * 1024 * 1024);
+        ReflectionTestUtils.setField(cache, "maxRooms", 256);
+        ReflectionTestUtils.invokeMethod(cache, "registerMetrics");
+
+        MessageHistoryService history = new MessageHistoryService();
+        ReflectionTestUtils.setField(history, "recentMessageCache", cache);
+        ReflectionTestUtils.setField(history, "messageWriteBehindQueue", new DiscardingWriteBehindQueue());
+        ReflectionTestUtils.setField(history, "messageSearchIndex", new DiscardingSearchIndex());
+
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            sink.get().consume(message); // Sent synchronously, on the benchmark thread.
+            return true;
+        });
+        template.setMessageConverter(converter);
+
+        ChatBroadcastService broadcast = new ChatBroadcastService();
+        ReflectionTestUtils.setField(broadcast, "messagingTemplate", template);
+        ReflectionTestUtils.setField(broadcast, "messageHistoryService", history);
+
+        controller = new ChatController();
+        ReflectionTestUtils.setField(controller, "chatBroadcastService", broadcast);
+        ReflectionTestUtils.setField(controller, "messageHistoryService", history);
+        ReflectionTestUtils.setField(controller, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.invokeMethod(controller, "registerMetrics");
+    }
+
+    @Benchmark
+    public void sendMessage(Blackhole blackhole) {
+        sink.set(blackhole);
+        controller.sendMessage(new Message("alice", "Hello everyone, the deploy went fine!"));
+    }
+
+    // Stands in for MongoDB: accepts every message without storing it.
+    private static final class DiscardingWriteBehindQueue extends MessageWriteBehindQueue {
+        @Override
+        public boolean enqueue(Message message) {
+            return true;
+        }
+    }
+
+    // Stands in for the search index: accepts every message without indexing it.
+    private static final class DiscardingSearchIndex extends MessageSearchIndex {
+        @Override
+        public void enqueue(Message message) {
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.chat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the username from the session attributes of a connect/disconnect event, as WebSocketEventListener does
+ * for every session: by wrapping the event message in a StompHeaderAccessor (which copies all headers), compared
+ * with reading the header map directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StompHeaderAccessBenchmark {
+
+    private Message<byte[]> eventMessage;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        sessionAttributes.put("username", "alice");
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        accessor.setSessionId("3b9ef3347d9d4b3a971f08c83b343e7f");
+        accessor.setSessionAttributes(sessionAttributes);
+        accessor.setNativeHeader("version", "1.2");
+        accessor.setNativeHeader("heart-beat", "0,0");
+        eventMessage = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    @Benchmark
+    public Object wrapAndRead() {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(eventMessage);
+        return headerAccessor.getSessionAttributes().get("username");
+    }
+
+    @Benchmark
+    public Object readHeadersDirectly() {
+        return SimpMessageHeaderAccessor.getSessionAttributes(eventMessage.getHeaders()).get("username");
+    }
+}
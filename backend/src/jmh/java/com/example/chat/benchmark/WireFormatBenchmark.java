@@ -0,0 +1,103 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.model.Message;
+import com.example.chat.websocket.WireFormats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * JSON against CBOR for a chat {@link Message}: encode and decode time, and the cost of the JSON-to-CBOR
+ * transcoding that RoomFanoutBroker does once per broadcast with CBOR subscribers.
+ *
+ * Bytes per message are printed once at setup, as they are, and after raw deflate, which is roughly what
+ * permessage-deflate sends when compressing every message on its own (no context takeover).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WireFormatBenchmark {
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+    private Message message;
+    private byte[] json;
+    private byte[] cbor;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Configured like the application's converters (see WebSocketConfig#configureMessageConverters).
+        jsonMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+        message = new Message("alice", "Hello everyone, the deploy went fine and the chat is back up!");
+        message.setId(new ObjectId().toHexString());
+        message.setRoomId("public");
+        message.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        json = jsonMapper.writeValueAsBytes(message);
+        cbor = cborMapper.writeValueAsBytes(message);
+
+        System.out.printf("%nbytes per message: json %d (deflated %d), cbor %d (deflated %d)%n",
+                json.length, deflatedSize(json), cbor.length, deflatedSize(cbor));
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws Exception {
+        return jsonMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeCbor() throws Exception {
+        return cborMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] transcodeJsonToCbor() throws Exception {
+        return WireFormats.jsonToCbor(json);
+    }
+
+    @Benchmark
+    public Message decodeJson() throws Exception {
+        return jsonMapper.readValue(json, Message.class);
+    }
+
+    @Benchmark
+    public Message decodeCbor() throws Exception {
+        return cborMapper.readValue(cbor, Message.class);
+    }
+
+    private static int deflatedSize(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.size();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.chat.loadtest;
+
+import com.example.chat.ChatApplication;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator that simulates many chat users against the /ws SockJS endpoint.
+ *
+ * Phases:
+ * 1. Connect: opens N STOMP sessions (a limited number of handshakes at a time), each subscribing to
+ *    /topic/public and sending /app/chat.addUser, and reports connect latency.
+ * 2. Warm-up and steady load: the users send /app/chat.sendMessage in turn at a fixed total rate, and every user measures the
+ *    end-to-end latency of each broadcast it receives. Reports sent messages/s, deliveries/s and the latency
+ *    histogram (HdrHistogram). The warm-up runs the same load first, so the JIT has compiled the hot path.
+ * 3. Storm: all sessions disconnect at once and reconnect at once, like after a deploy, and the reconnect latency,
+ *    failures and delivery right after the storm are reported.
+ *
+ * Without -Dtarget, the application is started in this JVM on a random port, with mongo-java-server as an
+ * in-memory MongoDB, so the test needs nothing but this machine. Run it with:
+ *   mvn -Ploadtest -DskipTests verify -Dloadtest.args="-Dusers=2000 -Drate=500 -Dduration=30"
+ * Options (system properties): users, rate (messages/s in total), duration (s), warmup (s), connect-concurrency,
+ * storm-cycles, target (base URL of a running backend, e.g. http://localhost:8080).
+ * Thousands of sessions need a matching open-files limit (ulimit -n).
+ */
+public class ChatLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("users", 1000);
+        int rate = Integer.getInteger("rate", 200);
+        int durationSeconds = Integer.getInteger("duration", 30);
+        int warmupSeconds = Integer.getInteger("warmup", 10);
+        int connectConcurrency = Integer.getInteger("connect-concurrency", 200);
+        int stormCycles = Integer.getInteger("storm-cycles", 1);
+        String target = System.getProperty("target", "");
+
+        MongoServer mongo = null;
+        ConfigurableApplicationContext application = null;
+        if (target.isBlank()) {
+            mongo = new MongoServer(new MemoryBackend());
+            String mongoUri = mongo.bindAndGetConnectionString() + "/chatdb";
+            application = new SpringApplication(ChatApplication.class).run(
+                    "--server.port=0",
+                    "--spring.data.mongodb.uri=" + mongoUri,
+                    "--chat.persistence.write-behind.spill-file=target/loadtest-spill.jsonl",
+                    "--logging.level.root=WARN",
+                    "--logging.level.org.springframework.web=WARN",
+                    "--logging.level.org.springframework.messaging=WARN",
+                    "--logging.level.org.springframework.data.mongodb=WARN",
+                    // Frames still arriving for sessions the storm just closed.
+                    "--logging.level.org.springframework.web.socket.sockjs.client=OFF");
+            target = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+        }
+        String url = target + "/ws";
+        System.out.printf("Load test against %s: %d users, %d msg/s for %d s, %d storm cycle(s)%n",
+                url, users, rate, durationSeconds, stormCycles);
+
+        WebSocketStompClient client = createClient();
+        Recorder deliveryLatency = new Recorder(3);
+        AtomicLong received = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<SimulatedUser> simulatedUsers = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            simulatedUsers.add(new SimulatedUser("load-" + i, deliveryLatency, received, errors));
+        }
+
+        try {
+            connectAll("connect", client, url, simulatedUsers, connectConcurrency);
+            Thread.sleep(1000); // Let the joins settle before measuring.
+
+            if (warmupSeconds > 0) {
+                runLoad("warm-up", simulatedUsers, rate, warmupSeconds, deliveryLatency, received, errors);
+            }
+            runLoad("steady load", simulatedUsers, rate, durationSeconds, deliveryLatency, received, errors);
+
+            for (int cycle = 1; cycle <= stormCycles; cycle++) {
+                long start = System.nanoTime();
+                simulatedUsers.forEach(SimulatedUser::disconnect);
+                System.out.printf("%nstorm %d: disconnected %d sessions in %.0f ms%n",
+                        cycle, users, (System.nanoTime() - start) / 1e6);
+                Thread.sleep(1000);
+                // Everyone at once: no limit on concurrent handshakes.
+                connectAll("storm " + cycle + " reconnect", client, url, simulatedUsers, users);
+                runLoad("storm " + cycle + " after reconnect", simulatedUsers, rate, 5, deliveryLatency, received, errors);
+            }
+        } finally {
+            simulatedUsers.forEach(SimulatedUser::disconnect);
+            client.stop();
+            if (application != null) {
+                application.close();
+            }
+            if (mongo != null) {
+                mongo.shutdownNow();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static WebSocketStompClient createClient() {
+        SockJsClient sockJsClient = new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient())));
+        WebSocketStompClient client = new WebSocketStompClient(sockJsClient);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+        client.setMessageConverter(converter);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("loadtest-stomp-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        client.setTaskScheduler(scheduler); // For receipt timeouts; heart-beats stay off like the Angular client's.
+        return client;
+    }
+
+    private static void connectAll(String phase, WebSocketStompClient client, String url,
+                                   List<SimulatedUser> simulatedUsers, int concurrency) throws InterruptedException {
+        Histogram connectLatency = new Histogram(TimeUnit.MINUTES.toNanos(5), 3);
+        Semaphore handshakes = new Semaphore(concurrency);
+        AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<Void>> connections = new ArrayList<>();
+        long start = System.nanoTime();
+        for (SimulatedUser user : simulatedUsers) {
+            handshakes.acquire();
+            long connectStart = System.nanoTime();
+            connections.add(user.connect(client, url).whenComplete((ignored, failure) -> {
+                handshakes.release();
+                if (failure != null) {
+                    failed.incrementAndGet();
+                } else {
+                    synchronized (connectLatency) {
+                        connectLatency.recordValue(System.nanoTime() - connectStart);
+                    }
+                }
+            }));
+        }
+        try {
+            CompletableFuture.allOf(connections.toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            // Individual failures are counted above.
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n%s: %d connected, %d failed in %.1f s (%.0f connects/s)%n", phase,
+                connectLatency.getTotalCount(), failed.get(), seconds, connectLatency.getTotalCount() / seconds);
+        printLatency("connect latency", connectLatency);
+    }
+
+    private static void runLoad(String phase, List<SimulatedUser> simulatedUsers, int rate, int durationSeconds,
+                                Recorder deliveryLatency, AtomicLong received, AtomicLong errors)
+            throws InterruptedException {
+        long connected = simulatedUsers.stream().filter(SimulatedUser::isConnected).count();
+        deliveryLatency.getIntervalHistogram(); // Discard samples of earlier phases.
+        long receivedBefore = received.get();
+        long errorsBefore = errors.get();
+        AtomicLong sent = new AtomicLong();
+
+        // Every 10 ms, the next users in turn send this tick's share of the rate.
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        double perTick = rate / 100.0;
+        double[] owed = {0};
+        int[] next = {0};
+        long start = System.nanoTime();
+        ticker.scheduleAtFixedRate(() -> {
+            owed[0] += perTick;
+            while (owed[0] >= 1) {
+                owed[0]--;
+                SimulatedUser user = simulatedUsers.get(next[0]++ % simulatedUsers.size());
+                if (user.send()) {
+                    sent.incrementAndGet();
+                }
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        ticker.shutdownNow();
+        double sendSeconds = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(2000); // Let in-flight broadcasts arrive.
+
+        Histogram latency = deliveryLatency.getIntervalHistogram();
+        long deliveries = received.get() - receivedBefore;
+        long expected = sent.get() * connected;
+        System.out.printf("%n%s: %d sessions, sent %d (%.0f msg/s), delivered %d of %d expected (%.0f deliveries/s), %d errors%n",
+                phase, connected, sent.get(), sent.get() / sendSeconds, deliveries, expected,
+                deliveries / sendSeconds, errors.get() - errorsBefore);
+        printLatency("delivery latency", latency);
+    }
+
+    private static void printLatency(String name, Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            System.out.printf("  %s: no samples%n", name);
+            return;
+        }
+        System.out.printf("  %s (ms): p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n", name,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.chat.loadtest;
+
+import com.example.chat.model.Message;
+import org.HdrHistogram.Recorder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated chat user: a STOMP session over SockJS that joins the chat like the Angular client does
+ * (subscribe to /topic/public, then send /app/chat.addUser) and measures the delivery latency of every load-test
+ * message it receives.
+ *
+ * Load-test messages carry their send time (System.nanoTime of this JVM) in the content, so latency is exact as
+ * long as the sender and the receiver run in the same process, which they always do here.
+ */
+class SimulatedUser extends StompSessionHandlerAdapter {
+
+    static final String CONTENT_PREFIX = "loadtest:";
+
+    private final String username;
+    private final Recorder deliveryLatency;
+    private final AtomicLong received;
+    private final AtomicLong errors;
+    private volatile StompSession session;
+
+    SimulatedUser(String username, Recorder deliveryLatency, AtomicLong received, AtomicLong errors) {
+        this.username = username;
+        this.deliveryLatency = deliveryLatency;
+        this.received = received;
+        this.errors = errors;
+    }
+
+    /**
+     * Connects, subscribes to the public room and announces the user.
+     * @return Completes once the session is connected and the join has been sent.
+     */
+    CompletableFuture<Void> connect(WebSocketStompClient client, String url) {
+        return client.connectAsync(url, this).thenAccept(connected -> {
+            session = connected;
+            connected.subscribe("/topic/public", this);
+            connected.send("/app/chat.addUser", new Message(username, "joined!"));
+        });
+    }
+
+    /**
+     * Sends one load-test chat message stamped with the current time.
+     * @return False if the session is not connected.
+     */
+    boolean send() {
+        StompSession current = session;
+        if (current == null || !current.isConnected()) {
+            return false;
+        }
+        try {
+            current.send("/app/chat.sendMessage", new Message(username, CONTENT_PREFIX + System.nanoTime()));
+            return true;
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            return false;
+        }
+    }
+
+    void disconnect() {
+        StompSession current = session;
+        session = null;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    boolean isConnected() {
+        StompSession current = session;
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return Message.class;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        Message message = (Message) payload;
+        String content = message.getContent();
+        if (content != null && content.startsWith(CONTENT_PREFIX)) {
+            long sentAt = Long.parseLong(content.substring(CONTENT_PREFIX.length()));
+            deliveryLatency.recordValue(Math.max(0, System.nanoTime() - sentAt));
+            received.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload,
+                                Throwable exception) {
+        errors.incrementAndGet();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        errors.incrementAndGet();
+    }
+}
@@ -3,10 +3,13 @@
 
 package com.example.chat;
 
+import com.example.chat.config.NativeRuntimeHints; // Extra reflection metadata for the native executable
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints; // Registers NativeRuntimeHints during AOT processing
 
 @SpringBootApplication // This annotation marks it as a Spring Boot application.
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class ChatApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,127 @@
+package com.example.chat.auth;
+
+import io.micrometer.core.instrument.Gauge; // For exposing the hashing backlog
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.Timer; // For hashing latency
+import jakarta.annotation.PostConstruct; // For starting the pool once settings are injected
+import jakarta.annotation.PreDestroy; // For stopping the pool on shutdown
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder; // Adaptive, salted password hashing
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and verifies passwords with BCrypt on a dedicated, bounded thread pool.
+ *
+ * BCrypt is deliberately slow (tens of milliseconds per call at the default strength), so running it on Tomcat's
+ * request threads would let a login storm, such as every client reconnecting after a deploy, starve all other
+ * requests. Here at most one hash runs per core, a bounded queue absorbs bursts, and requests beyond that fail
+ * fast with a {@link java.util.concurrent.RejectedExecutionException} instead of piling up.
+ */
+@Component
+public class PasswordHasher {
+
+    // Stored passwords created before hashing was introduced are plain text; BCrypt hashes always start like this.
+    private static final String BCRYPT_PREFIX = "$2";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // BCrypt cost factor: every +1 doubles the time per hash.
+    @Value("${chat.auth.bcrypt-strength:10}")
+    private int strength;
+
+    // Hashing threads; 0 means one per available core.
+    @Value("${chat.auth.hashing-threads:0}")
+    private int threads;
+
+    // Hash/verify requests waiting for a thread before new ones are rejected.
+    @Value("${chat.auth.hashing-queue-capacity:1000}")
+    private int queueCapacity;
+
+    private BCryptPasswordEncoder encoder;
+    private ThreadPoolExecutor executor;
+    private Timer hashTimer;
+    private Timer verifyTimer;
+
+    @PostConstruct
+    void start() {
+        encoder = new BCryptPasswordEncoder(strength);
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()); // Full queue: fail fast, the caller answers "busy".
+
+        hashTimer = Timer.builder("chat.auth.password.hashing").tag("operation", "hash")
+                .description("Time spent hashing passwords").register(meterRegistry);
+        verifyTimer = Timer.builder("chat.auth.password.hashing").tag("operation", "verify")
+                .description("Time spent verifying passwords").register(meterRegistry);
+        Gauge.builder("chat.auth.password.queue", executor, pool -> pool.getQueue().size())
+                .description("Password hash/verify requests waiting for a hashing thread").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hashes a password for storage.
+     * @param rawPassword The password as entered by the user.
+     * @return The BCrypt hash; fails with a RejectedExecutionException when the hashing pool is saturated.
+     */
+    public CompletableFuture<String> hash(String rawPassword) {
+        return submit(hashTimer, () -> encoder.encode(rawPassword));
+    }
+
+    /**
+     * Checks a password against its stored form. Stored passwords from before hashing was introduced are
+     * compared as plain text, without using the pool.
+     * @param rawPassword The password as entered by the user.
+     * @param storedPassword The stored hash (or legacy plain-text password).
+     * @return Whether the password matches; fails with a RejectedExecutionException when the pool is saturated.
+     */
+    public CompletableFuture<Boolean> matches(String rawPassword, String storedPassword) {
+        if (storedPassword == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (isLegacy(storedPassword)) {
+            // Constant-time comparison, so response times don't reveal how much of the password was right.
+            return CompletableFuture.completedFuture(MessageDigest.isEqual(
+                    rawPassword.getBytes(StandardCharsets.UTF_8), storedPassword.getBytes(StandardCharsets.UTF_8)));
+        }
+        return submit(verifyTimer, () -> encoder.matches(rawPassword, storedPassword));
+    }
+
+    /**
+     * @param storedPassword A password as stored in the users collection.
+     * @return True if it is a legacy plain-text password that should be replaced by a hash.
+     */
+    public boolean isLegacy(String storedPassword) {
+        return !storedPassword.startsWith(BCRYPT_PREFIX);
+    }
+
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> work) {
+        // supplyAsync reports a rejection by throwing; turn it into a failed future like any other error.
+        try {
+            return CompletableFuture.supplyAsync(() -> timer.record(work), executor);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
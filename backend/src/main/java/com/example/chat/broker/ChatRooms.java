@@ -0,0 +1,46 @@
+package com.example.chat.broker;
+
+import java.util.regex.Pattern; // For validating room ids
+
+/**
+ * Naming rules for chat rooms and their STOMP destinations.
+ * The original single chat is the room "public", still broadcast on "/topic/public" so existing clients keep
+ * working; every other room is broadcast on "/topic/room.{id}".
+ */
+public final class ChatRooms {
+
+    public static final String PUBLIC_ROOM = "public";
+    public static final String PUBLIC_DESTINATION = "/topic/public";
+    public static final String ROOM_DESTINATION_PREFIX = "/topic/room.";
+
+    // Letters, digits, '-' and '_' only, so a room id can never smuggle in another destination segment.
+    private static final Pattern VALID_ROOM_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private ChatRooms() {
+    }
+
+    /**
+     * @param roomId A room id; null means the public room.
+     * @return The topic that subscribers of the room listen on.
+     */
+    public static String destinationFor(String roomId) {
+        String room = normalize(roomId);
+        return PUBLIC_ROOM.equals(room) ? PUBLIC_DESTINATION : ROOM_DESTINATION_PREFIX + room;
+    }
+
+    /**
+     * Validates a room id received from a client.
+     * @param roomId The room id; null or blank means the public room.
+     * @return The room id to use.
+     * @throws IllegalArgumentException If the room id contains anything but letters, digits, '-' and '_'.
+     */
+    public static String normalize(String roomId) {
+        if (roomId == null || roomId.isBlank()) {
+            return PUBLIC_ROOM;
+        }
+        if (!VALID_ROOM_ID.matcher(roomId).matches()) {
+            throw new IllegalArgumentException("Invalid room id: " + roomId);
+        }
+        return roomId;
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.chat.broker;
+
+import com.example.chat.websocket.WireFormats; // CBOR as an alternative to JSON payloads
+import io.micrometer.core.instrument.DistributionSummary; // For the number of sessions a broadcast reaches
+import io.micrometer.core.instrument.Gauge; // For the delivery backlog
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry, optional
+import org.springframework.messaging.Message; // Spring's generic message abstraction
+import org.springframework.messaging.MessageChannel; // Channel towards connected clients
+import org.springframework.messaging.MessageHeaders; // Headers of a Spring message
+import org.springframework.messaging.SubscribableChannel; // Channels the broker listens on
+import org.springframework.messaging.converter.MessageConverter; // For payloads that are not yet serialized
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor; // For reading simp headers
+import org.springframework.messaging.simp.SimpMessageType; // SUBSCRIBE, MESSAGE, DISCONNECT, ...
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler; // Base class of Spring's brokers
+import org.springframework.messaging.simp.stomp.StompCommand; // STOMP frame commands
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor; // For building outbound STOMP frames
+import org.springframework.messaging.support.MessageBuilder; // For creating messages
+import org.springframework.util.MimeType; // Content type of the broadcast payload
+import org.springframework.util.MimeTypeUtils; // For content types given as text
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message broker for chat rooms ("/topic/public" and "/topic/room.{id}"), replacing Spring's SimpleBroker for
+ * the "/topic" prefix.
+ *
+ * Compared to SimpleBroker it is built for large fan-out:
+ * - Subscribers are kept per exact destination in concurrent sets, so subscribing, unsubscribing and
+ *   broadcasting never contend on a shared lock or a pattern-matching cache.
+ * - Each broadcast payload is serialized to bytes once, and that same byte array is handed to every session.
+ *   Outbound frames are built directly as mutable STOMP headers, so the protocol handler can encode them
+ *   without copying the headers again per session.
+ *   Subscriptions that asked for CBOR (see {@link WireFormats}) share a second copy, transcoded once per broadcast.
+ * - Delivery runs on sharded single-thread executors, one per core by default. Every session is pinned to one
+ *   shard, which spreads large broadcasts over all cores while handing the messages of a session to the outbound
+ *   channel in order. A full shard makes the broadcasting thread wait, rather than deliver ahead of the queue.
+ * - The outbound channel's thread pool would reorder them again; with {@code setPreservePublishOrder(true)}
+ *   (the default in FanoutBrokerConfig) every session gets its own ordered view of that channel.
+ *
+ * Destinations are matched exactly; wildcard subscriptions are not supported. CONNECT and heart-beats are still
+ * answered by the SimpleBroker registered for the remaining prefixes in WebSocketConfig.
+ */
+public class RoomFanoutBroker extends AbstractBrokerMessageHandler {
+
+    // STOMP headers that describe the frame itself and are never copied from the source message.
+    private static final Set<String> FRAME_HEADERS = Set.of(
+            StompHeaderAccessor.STOMP_DESTINATION_HEADER, StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER,
+            StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER, StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER,
+            StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER, StompHeaderAccessor.STOMP_RECEIPT_HEADER);
+
+    // Used when a shard's queue is full. Delivering on the broadcasting thread instead (CallerRunsPolicy) would
+    // overtake the batches already queued for the same sessions.
+    private final RejectedExecutionHandler waitForRoom = (task, executor) -> {
+        if (executor.isShutdown()) {
+            return; // Stopping: broadcasts that arrive now are not delivered.
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for a fan-out shard, broadcast batch dropped");
+        }
+    };
+
+    // Fan-out size tag shared by all destinations beyond the tagged limit.
+    static final String OTHER_DESTINATIONS = "other";
+
+    private final MessageConverter messageConverter;
+    private final int shardCount;
+    private final int shardQueueCapacity;
+
+    // destination -> every (session, subscription) pair listening on it
+    private final Map<String, Set<Subscriber>> subscribersByDestination = new ConcurrentHashMap<>();
+    // sessionId -> per-session delivery state and subscriptions, for cleanup on UNSUBSCRIBE/DISCONNECT
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong broadcastCounter = new AtomicLong();
+    private ThreadPoolExecutor[] shards;
+
+    private MeterRegistry meterRegistry;
+    private int maxTaggedDestinations = 100;
+    // tag value -> fan-out size summary; at most maxTaggedDestinations + 1 entries
+    private final Map<String, DistributionSummary> fanoutSizes = new ConcurrentHashMap<>();
+
+    /**
+     * @param clientInboundChannel Channel carrying frames from clients (SUBSCRIBE, SEND, DISCONNECT, ...).
+     * @param clientOutboundChannel Channel carrying frames to clients.
+     * @param brokerChannel Channel carrying messages sent by the application (e.g. SimpMessagingTemplate).
+     * @param messageConverter Converter for the rare payload that reaches the broker unserialized.
+     * @param shardCount Number of delivery shards; 0 or less means one per available core.
+     * @param shardQueueCapacity Pending deliveries per shard before the broadcasting thread waits for room.
+     */
+    public RoomFanoutBroker(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                            SubscribableChannel brokerChannel, MessageConverter messageConverter,
+                            int shardCount, int shardQueueCapacity) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of("/topic"));
+        this.messageConverter = messageConverter;
+        this.shardCount = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shardQueueCapacity = shardQueueCapacity;
+    }
+
+    /**
+     * Enables metrics: the fan-out size of every broadcast, tagged with its destination, and the delivery backlog.
+     * @param meterRegistry The registry to register the meters in.
+     * @param maxTaggedDestinations Destinations that get their own tag; rooms beyond this share the tag "other",
+     *                              so the number of time series stays bounded however many rooms are created.
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry, int maxTaggedDestinations) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedDestinations = maxTaggedDestinations;
+    }
+
+    @Override
+    protected void startInternal() {
+        shards = new ThreadPoolExecutor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            AtomicInteger threads = new AtomicInteger();
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(shardQueueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "fanout-" + shard + "-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    // A full shard pushes back on the broadcasting thread instead of growing without bound.
+                    waitForRoom);
+        }
+        if (meterRegistry != null) {
+            Gauge.builder("chat.broker.fanout.queue", this, RoomFanoutBroker::getPendingDeliveries)
+                    .description("Broadcast batches waiting for a fan-out shard").register(meterRegistry);
+        }
+        publishBrokerAvailableEvent();
+    }
+
+    @Override
+    protected void stopInternal() {
+        publishBrokerUnavailableEvent();
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (!checkDestinationPrefix(destination)) {
+            return;
+        }
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (SimpMessageType.MESSAGE.equals(messageType)) {
+            broadcast(destination, message);
+        } else if (SimpMessageType.SUBSCRIBE.equals(messageType)) {
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            if (sessionId != null && subscriptionId != null && destination != null) {
+                subscribe(sessionId, subscriptionId, destination, wantsCbor(headers));
+            }
+        } else if (SimpMessageType.UNSUBSCRIBE.equals(messageType)) {
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            if (sessionId != null && subscriptionId != null) {
+                unsubscribe(sessionId, subscriptionId);
+            }
+        } else if (SimpMessageType.DISCONNECT.equals(messageType)) {
+            if (sessionId != null) {
+                removeSession(sessionId);
+            }
+        }
+    }
+
+    /**
+     * @param destination A topic destination.
+     * @return How many subscriptions currently receive broadcasts to the destination.
+     */
+    public int getSubscriberCount(String destination) {
+        Set<Subscriber> subscribers = subscribersByDestination.get(destination);
+        return subscribers != null ? subscribers.size() : 0;
+    }
+
+    /**
+     * @return How many per-shard delivery batches are queued and not yet delivered.
+     */
+    public int getPendingDeliveries() {
+        int pending = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            pending += shard.getQueue().size();
+        }
+        return pending;
+    }
+
+    /**
+     * @return How many connected sessions have subscribed to a topic since they connected.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // A SUBSCRIBE with content-type:application/cbor, from a session that can receive binary frames.
+    private static boolean wantsCbor(MessageHeaders headers) {
+        MimeType contentType = contentType(headers);
+        if (contentType == null || !WireFormats.CBOR.equalsTypeAndSubtype(contentType)) {
+            return false;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        return attributes != null && Boolean.TRUE.equals(attributes.get(WireFormats.BINARY_FRAMES_ATTRIBUTE));
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination, boolean cbor) {
+        SessionState session = sessions.computeIfAbsent(sessionId, id ->
+                new SessionState(Math.floorMod(id.hashCode(), shardCount), getClientOutboundChannelForSession(id)));
+        Subscriber subscriber = new Subscriber(sessionId, subscriptionId, destination, session, cbor);
+        if (session.subscriptions.putIfAbsent(subscriptionId, subscriber) == null) {
+            // compute() only locks this destination's entry, and can't race with removeFromDestination().
+            subscribersByDestination.compute(destination, (d, subscribers) -> {
+                Set<Subscriber> result = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+                result.add(subscriber);
+                return result;
+            });
+        }
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        SessionState session = sessions.get(sessionId);
+        if (session != null) {
+            Subscriber subscriber = session.subscriptions.remove(subscriptionId);
+            if (subscriber != null) {
+                removeFromDestination(subscriber);
+            }
+        }
+    }
+
+    private void removeSession(String sessionId) {
+        SessionState session = sessions.remove(sessionId);
+        if (session != null) {
+            session.subscriptions.values().forEach(this::removeFromDestination);
+        }
+    }
+
+    private void removeFromDestination(Subscriber subscriber) {
+        // Drop the destination entry once its last subscriber leaves, so abandoned rooms don't accumulate.
+        subscribersByDestination.computeIfPresent(subscriber.destination, (destination, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private void broadcast(String destination, Message<?> message) {
+        Set<Subscriber> subscribers = subscribersByDestination.get(destination);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        if (meterRegistry != null) {
+            fanoutSize(destination).record(subscribers.size());
+        }
+
+        // Serialized exactly once per broadcast; every session receives this same array.
+        Message<?> serialized = serialize(message);
+        if (serialized == null) {
+            return;
+        }
+        byte[] payload = (byte[]) serialized.getPayload();
+        MimeType contentType = contentType(serialized.getHeaders());
+        Map<String, List<String>> extraHeaders = customNativeHeaders(message);
+        String broadcastId = Long.toString(broadcastCounter.incrementAndGet(), Character.MAX_RADIX);
+
+        // Split subscribers by shard, then let every shard deliver its part in parallel.
+        // The CBOR copy is only made if a CBOR subscriber is found, and then only once.
+        boolean transcodable = contentType != null && MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType);
+        byte[] cborPayload = null;
+        @SuppressWarnings("unchecked")
+        List<Subscriber>[] perShard = new List[shardCount];
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.cbor && transcodable && cborPayload == null) {
+                cborPayload = toCbor(payload);
+                transcodable = cborPayload != null;
+            }
+            int shard = subscriber.session.shard;
+            if (perShard[shard] == null) {
+                perShard[shard] = new ArrayList<>();
+            }
+            perShard[shard].add(subscriber);
+        }
+        byte[] cbor = cborPayload;
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<Subscriber> batch = perShard[shard];
+            if (batch != null) {
+                shards[shard].execute(() -> deliver(batch, payload, contentType, cbor, extraHeaders, broadcastId));
+            }
+        }
+    }
+
+    private DistributionSummary fanoutSize(String destination) {
+        DistributionSummary summary = fanoutSizes.get(destination);
+        if (summary != null) {
+            return summary;
+        }
+        // Checked without locking, so the limit may be overshot by a few concurrently created rooms.
+        String tag = fanoutSizes.size() < maxTaggedDestinations ? destination : OTHER_DESTINATIONS;
+        return fanoutSizes.computeIfAbsent(tag, t -> DistributionSummary.builder("chat.broker.fanout.size")
+                .tag("destination", t)
+                .description("Sessions a broadcast was delivered to")
+                .register(meterRegistry));
+    }
+
+    // Subscribers that asked for CBOR get cborPayload if there is one, and the original payload otherwise.
+    private void deliver(List<Subscriber> subscribers, byte[] payload, MimeType contentType, byte[] cborPayload,
+                         Map<String, List<String>> extraHeaders, String broadcastId) {
+        for (Subscriber subscriber : subscribers) {
+            boolean cbor = subscriber.cbor && cborPayload != null;
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            if (extraHeaders != null) {
+                extraHeaders.forEach(accessor::setNativeHeaderValues);
+            }
+            accessor.setSessionId(subscriber.sessionId);
+            accessor.setSubscriptionId(subscriber.subscriptionId);
+            accessor.setDestination(subscriber.destination);
+            if (cbor) {
+                accessor.setContentType(WireFormats.CBOR);
+            } else if (contentType != null) {
+                accessor.setContentType(contentType);
+            }
+            accessor.setMessageId(broadcastId + "-" + subscriber.sessionId + "-" + subscriber.subscriptionId);
+            accessor.setLeaveMutable(true); // Lets the STOMP handler use these headers as-is instead of copying.
+            try {
+                subscriber.session.outboundChannel.send(
+                        MessageBuilder.createMessage(cbor ? cborPayload : payload, accessor.getMessageHeaders()));
+            } catch (RuntimeException e) {
+                logger.error("Failed to deliver message to session " + subscriber.sessionId, e);
+            }
+        }
+    }
+
+    // Messages from SimpMessagingTemplate arrive already converted to byte[]; anything else is converted here.
+    private Message<?> serialize(Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof byte[]) {
+            return message;
+        }
+        Message<?> converted = messageConverter.toMessage(payload, message.getHeaders());
+        if (converted != null && converted.getPayload() instanceof byte[]) {
+            return converted;
+        }
+        logger.error("Cannot serialize broadcast payload of type " + payload.getClass().getName());
+        return null;
+    }
+
+    private byte[] toCbor(byte[] json) {
+        try {
+            return WireFormats.jsonToCbor(json);
+        } catch (IOException e) {
+            logger.error("Cannot transcode broadcast payload to CBOR, sending JSON instead", e);
+            return null;
+        }
+    }
+
+    private static MimeType contentType(MessageHeaders headers) {
+        Object value = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (value instanceof MimeType mimeType) {
+            return mimeType;
+        }
+        return value instanceof String text ? MimeTypeUtils.parseMimeType(text) : null;
+    }
+
+    // Application-defined native headers of the source message (e.g. convertAndSend(dest, payload, headers)),
+    // without the frame headers that are set per session.
+    private static Map<String, List<String>> customNativeHeaders(Message<?> message) {
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>)
+                message.getHeaders().get(SimpMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null || nativeHeaders.isEmpty()) {
+            return null;
+        }
+        Map<String, List<String>> custom = new LinkedHashMap<>(nativeHeaders);
+        custom.keySet().removeAll(FRAME_HEADERS);
+        return custom.isEmpty() ? null : custom;
+    }
+
+    // Delivery state of one session: its shard, its outbound channel (an ordered per-session wrapper when publish
+    // order is preserved, created once so all of the session's messages queue behind each other) and its
+    // subscriptions by subscription id.
+    private static final class SessionState {
+        final int shard;
+        final MessageChannel outboundChannel;
+        final Map<String, Subscriber> subscriptions = new ConcurrentHashMap<>();
+
+        SessionState(int shard, MessageChannel outboundChannel) {
+            this.shard = shard;
+            this.outboundChannel = outboundChannel;
+        }
+    }
+
+    // One STOMP subscription. Identity-based equality is intended: each SUBSCRIBE creates exactly one instance.
+    private static final class Subscriber {
+        final String sessionId;
+        final String subscriptionId;
+        final String destination;
+        final SessionState session;
+        final boolean cbor;
+
+        Subscriber(String sessionId, String subscriptionId, String destination, SessionState session, boolean cbor) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.destination = destination;
+            this.session = session;
+            this.cbor = cbor;
+        }
+    }
+}
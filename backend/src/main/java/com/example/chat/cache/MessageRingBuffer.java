@@ -0,0 +1,241 @@
+package com.example.chat.cache;
+
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bounded, ordered buffer of the most recent messages of one room.
+ * Messages are kept sorted by (timestamp, id), the same order MongoDB pages use, even when several threads
+ * append concurrently and their messages arrive slightly out of order. When the buffer exceeds its message
+ * count or estimated memory limit, the oldest messages are evicted.
+ *
+ * The buffer always holds every message newer than its oldest entry, because all new messages are appended.
+ * It is additionally "complete" when it is known to hold the whole history of the room; only then may it
+ * answer for positions older than its oldest entry. Reads return null whenever the buffer cannot answer a
+ * page completely, and the caller falls back to MongoDB.
+ */
+class MessageRingBuffer {
+
+    static final Comparator<Message> ORDER = Comparator.comparing(Message::getTimestamp).thenComparing(Message::getId);
+
+    // Rough fixed cost of a Message object with its id, timestamp and string headers on a 64-bit JVM.
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private final int capacity;
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Message[] slots; // Circular array; logical index 0 is the oldest message.
+    private int head;
+    private int size;
+    private long bytes;
+    private boolean complete;
+
+    MessageRingBuffer(int capacity, long maxBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.slots = new Message[capacity];
+    }
+
+    /**
+     * Adds a newly sent message. Usually this is a plain append at the tail; a message that lost a race with a
+     * concurrent writer is moved back into (timestamp, id) order.
+     */
+    void append(Message message) {
+        lock.writeLock().lock();
+        try {
+            insertSorted(message);
+            evictOverflow();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the newest page loaded from MongoDB into the buffer, skipping messages that are already present.
+     * @param newest The newest messages of the room, oldest-first.
+     * @param wholeHistory Whether the page is known to contain the complete history of the room.
+     */
+    void fill(List<Message> newest, boolean wholeHistory) {
+        lock.writeLock().lock();
+        try {
+            boolean keptEverything = true;
+            // Newest first, so that when the buffer fills up it is the oldest messages that don't fit.
+            for (int i = newest.size() - 1; i >= 0; i--) {
+                Message message = newest.get(i);
+                if (indexOf(message) < 0 && !insertSorted(message)) {
+                    keptEverything = false;
+                }
+            }
+            if (evictOverflow()) {
+                keptEverything = false;
+            }
+            if (wholeHistory && keptEverything) {
+                complete = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The newest {@code limit} messages oldest-first, or null if the buffer cannot tell.
+     */
+    List<Message> latest(int limit) {
+        lock.readLock().lock();
+        try {
+            if (size < limit && !complete) {
+                return null;
+            }
+            return copy(Math.max(0, size - limit), size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} messages older than the cursor, oldest-first, or null if the buffer cannot tell.
+     */
+    List<Message> before(MessageCursor cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            int end = firstIndexAfter(cursor, false); // Messages [0, end) are older than the cursor.
+            if (end < limit && !complete) {
+                return null;
+            }
+            return copy(Math.max(0, end - limit), end);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Up to {@code limit} messages newer than the cursor, oldest-first, or null if the buffer cannot tell.
+     */
+    List<Message> after(MessageCursor cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            // Everything newer than the oldest entry is buffered, so any cursor at or after it can be answered.
+            if (!complete && (size == 0 || compare(cursor, get(0)) < 0)) {
+                return null;
+            }
+            int start = firstIndexAfter(cursor, true);
+            return copy(start, Math.min(size, start + limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long bytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static long estimateBytes(Message message) {
+        return MESSAGE_OVERHEAD_BYTES + 2L * (length(message.getId()) + length(message.getSender()) + length(message.getContent()));
+    }
+
+    // --- Internal helpers; callers hold the write or read lock. ---
+
+    // Returns false if the message is older than everything in a full buffer and therefore not kept.
+    private boolean insertSorted(Message message) {
+        if (size == capacity) {
+            if (ORDER.compare(message, get(0)) < 0) {
+                complete = false;
+                return false;
+            }
+            removeOldest();
+        }
+        int position = size;
+        while (position > 0 && ORDER.compare(get(position - 1), message) > 0) {
+            set(position, get(position - 1)); // Shift newer messages one slot towards the tail.
+            position--;
+        }
+        set(position, message);
+        size++;
+        bytes += estimateBytes(message);
+        return true;
+    }
+
+    private boolean evictOverflow() {
+        boolean evicted = false;
+        while (size > 0 && (size > capacity || bytes > maxBytes)) {
+            removeOldest();
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    private void removeOldest() {
+        Message oldest = slots[head];
+        slots[head] = null;
+        head = (head + 1) % capacity;
+        size--;
+        bytes -= estimateBytes(oldest);
+        complete = false; // Something older than the new oldest entry now exists only in MongoDB.
+    }
+
+    // Index of the first message after the cursor position (inclusive of an exact match unless strictlyAfter).
+    private int firstIndexAfter(MessageCursor cursor, boolean strictlyAfter) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(cursor, get(mid));
+            if (cmp > 0 || (strictlyAfter && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int indexOf(Message message) {
+        int index = firstIndexAfter(MessageCursor.of(message), false);
+        return index < size && get(index).getId().equals(message.getId()) ? index : -1;
+    }
+
+    private static int compare(MessageCursor cursor, Message message) {
+        int cmp = cursor.getTimestamp().compareTo(message.getTimestamp());
+        return cmp != 0 ? cmp : cursor.getId().compareTo(message.getId());
+    }
+
+    private List<Message> copy(int from, int to) {
+        List<Message> result = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    private Message get(int logicalIndex) {
+        return slots[(head + logicalIndex) % capacity];
+    }
+
+    private void set(int logicalIndex, Message message) {
+        slots[(head + logicalIndex) % capacity] = message;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
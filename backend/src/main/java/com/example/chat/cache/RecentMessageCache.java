@@ -0,0 +1,124 @@
+package com.example.chat.cache;
+
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+import io.micrometer.core.instrument.Counter; // For hit/miss counters
+import io.micrometer.core.instrument.Gauge; // For exposing the cache size
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import jakarta.annotation.PostConstruct; // For registering metrics once dependencies are injected
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of the most recent messages per room, sitting in front of MessageRepository.
+ * Each room gets its own {@link MessageRingBuffer}, bounded by message count and estimated memory.
+ * Lookups return null on a miss, which tells the caller to read the page from MongoDB instead.
+ */
+@Component
+public class RecentMessageCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Maximum number of messages kept per room.
+    @Value("${chat.history.cache.capacity:1000}")
+    private int capacity;
+
+    // Maximum estimated heap used by the messages of one room.
+    @Value("${chat.history.cache.max-bytes-per-room:8388608}")
+    private long maxBytesPerRoom;
+
+    // Rooms beyond this many are not cached at all, which bounds the total memory of the cache.
+    @Value("${chat.history.cache.max-rooms:256}")
+    private int maxRooms;
+
+    private final Map<String, MessageRingBuffer> buffers = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = Counter.builder("chat.history.cache.requests").tag("result", "hit")
+                .description("History pages served from the recent-message cache").register(meterRegistry);
+        misses = Counter.builder("chat.history.cache.requests").tag("result", "miss")
+                .description("History pages that had to be read from MongoDB").register(meterRegistry);
+        Gauge.builder("chat.history.cache.messages", this, RecentMessageCache::totalMessages)
+                .description("Messages held in the recent-message cache").register(meterRegistry);
+        Gauge.builder("chat.history.cache.bytes", this, RecentMessageCache::totalBytes)
+                .description("Estimated heap used by the recent-message cache").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Records a newly sent message. Safe to call from many threads at once.
+     * @param roomId The room the message was broadcast to.
+     * @param message The message, with its final id and timestamp.
+     */
+    public void append(String roomId, Message message) {
+        MessageRingBuffer buffer = bufferFor(roomId);
+        if (buffer != null) {
+            buffer.append(message);
+        }
+    }
+
+    /**
+     * Merges the newest page of a room, as read from MongoDB, into the cache.
+     * @param roomId The room the page belongs to.
+     * @param newest The newest messages of the room, oldest-first.
+     * @param wholeHistory Whether MongoDB returned fewer messages than requested, i.e. the page is the whole history.
+     */
+    public void fill(String roomId, List<Message> newest, boolean wholeHistory) {
+        MessageRingBuffer buffer = bufferFor(roomId);
+        if (buffer != null) {
+            buffer.fill(newest, wholeHistory);
+        }
+    }
+
+    /**
+     * Looks up one page of history, with the same semantics as MessageRepository#findPage.
+     * @return The page oldest-first, or null if the cache cannot answer it completely.
+     */
+    public List<Message> findPage(String roomId, MessageCursor before, MessageCursor after, int limit) {
+        MessageRingBuffer buffer = buffers.get(roomId);
+        List<Message> page = null;
+        if (buffer != null) {
+            if (after != null) {
+                page = buffer.after(after, limit);
+            } else if (before != null) {
+                page = buffer.before(before, limit);
+            } else {
+                page = buffer.latest(limit);
+            }
+        }
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    /**
+     * @return How many messages the cache keeps per room; also the size of the startup warm-up read.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private MessageRingBuffer bufferFor(String roomId) {
+        MessageRingBuffer buffer = buffers.get(roomId);
+        if (buffer == null && buffers.size() < maxRooms) {
+            buffer = buffers.computeIfAbsent(roomId, r -> new MessageRingBuffer(capacity, maxBytesPerRoom));
+        }
+        return buffer;
+    }
+
+    private double totalMessages() {
+        return buffers.values().stream().mapToInt(MessageRingBuffer::size).sum();
+    }
+
+    private double totalBytes() {
+        return buffers.values().stream().mapToLong(MessageRingBuffer::bytes).sum();
+    }
+}
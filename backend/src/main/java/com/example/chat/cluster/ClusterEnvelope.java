@@ -0,0 +1,34 @@
+package com.example.chat.cluster;
+
+import com.example.chat.model.Message; // The broadcast being relayed
+import lombok.Data; // Lombok annotation: getters, setters, equals(), hashCode() and toString()
+import org.springframework.data.annotation.Id; // Primary key of the relayed event
+
+/**
+ * A broadcast relayed from the node where it happened to every other node of the cluster.
+ * Besides the message itself it carries what receivers need to deliver it exactly once and in order:
+ * a unique id for deduplication, and the origin node with a per-origin sequence number.
+ */
+@Data
+public class ClusterEnvelope {
+    @Id
+    private String id; // Unique per relayed event; receivers drop ids they have already seen.
+    private String originNodeId; // The node that published the event.
+    private long sequence; // Increases by one per event published by the origin node, starting at 1.
+    private ClusterEventType type;
+    private long publishedAt; // Origin wall-clock time in epoch milliseconds, for propagation latency.
+    private Message message;
+
+    public ClusterEnvelope() {
+    }
+
+    public ClusterEnvelope(String id, String originNodeId, long sequence, ClusterEventType type, long publishedAt,
+                           Message message) {
+        this.id = id;
+        this.originNodeId = originNodeId;
+        this.sequence = sequence;
+        this.type = type;
+        this.publishedAt = publishedAt;
+        this.message = message;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.chat.cluster;
+
+/**
+ * What a {@link ClusterEnvelope} carries, which decides what the receiving node does with it.
+ */
+public enum ClusterEventType {
+    /** A chat message: broadcast to the room and added to the recent-message cache (the origin persists it). */
+    MESSAGE,
+    /** A join/leave notice: only broadcast, never stored. */
+    NOTICE
+}
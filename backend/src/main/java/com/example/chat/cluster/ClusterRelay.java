@@ -0,0 +1,27 @@
+package com.example.chat.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Transport that carries broadcasts between the backend nodes of a cluster.
+ * Implementations deliver every published envelope to the receiver of every node, including (harmlessly) the
+ * publishing node itself; they do not need to guarantee ordering or exactly-once delivery, because
+ * ChatBroadcastService deduplicates and reorders what it receives (see {@link ClusterSequencer}).
+ *
+ * Implementations: {@link MongoCappedClusterRelay} (default) and {@link LoopbackClusterRelay} (in-JVM, for tests).
+ */
+public interface ClusterRelay {
+
+    /**
+     * Sends an envelope to the other nodes. Must not block the caller on network I/O for long, since it is
+     * called on the WebSocket message-handling threads.
+     * @param envelope The envelope to relay.
+     */
+    void publish(ClusterEnvelope envelope);
+
+    /**
+     * Sets the callback that receives envelopes published by any node. Called once, before the relay starts.
+     * @param receiver The callback; it may be invoked from a relay-owned thread.
+     */
+    void setReceiver(Consumer<ClusterEnvelope> receiver);
+}
@@ -0,0 +1,143 @@
+package com.example.chat.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns the envelopes a node receives from its {@link ClusterRelay} into an exactly-once, in-order stream.
+ *
+ * - Duplicates are dropped by envelope id, remembering the most recent ids in a bounded LRU set, and by sequence
+ *   number (anything below what an origin has already delivered).
+ * - Envelopes of one origin node are released strictly in sequence order. An envelope that arrives ahead of a
+ *   missing one is held back until the gap is filled, or until the gap is older than the gap timeout, at which
+ *   point the missing sequence numbers are given up on so one lost envelope can't stall its origin forever.
+ *
+ * All messages of a sender pass through the node the sender is connected to, so per-origin order also keeps
+ * every sender's messages in order. Not thread-safe on its own; callers serialize access.
+ */
+public class ClusterSequencer {
+
+    // Origins that published nothing for this long and have nothing pending are forgotten (e.g. departed nodes).
+    private static final long IDLE_ORIGIN_MILLIS = 10 * 60 * 1000L;
+
+    private final long gapTimeoutMillis;
+    private final Map<String, Boolean> recentIds;
+    private final Map<String, OriginState> origins = new HashMap<>();
+
+    private long duplicateCount;
+    private long skippedCount;
+
+    /**
+     * @param dedupeCapacity How many recent envelope ids are remembered for deduplication.
+     * @param gapTimeoutMillis How long envelopes are held back waiting for a missing predecessor.
+     */
+    public ClusterSequencer(int dedupeCapacity, long gapTimeoutMillis) {
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.recentIds = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupeCapacity;
+            }
+        };
+    }
+
+    /**
+     * Accepts a received envelope.
+     * @param envelope The envelope, as received from the relay.
+     * @param nowMillis The current time.
+     * @return The envelopes that are now ready for delivery, in order; empty if the envelope was a duplicate or
+     *         has to wait for a predecessor.
+     */
+    public List<ClusterEnvelope> offer(ClusterEnvelope envelope, long nowMillis) {
+        if (recentIds.put(envelope.getId(), Boolean.TRUE) != null) {
+            duplicateCount++;
+            return Collections.emptyList();
+        }
+        // The first envelope seen from an origin defines where its stream starts for this node.
+        OriginState origin = origins.computeIfAbsent(envelope.getOriginNodeId(),
+                id -> new OriginState(envelope.getSequence()));
+        origin.lastSeenAt = nowMillis;
+        if (envelope.getSequence() < origin.nextSequence || origin.pending.containsKey(envelope.getSequence())) {
+            duplicateCount++;
+            return Collections.emptyList();
+        }
+        origin.pending.put(envelope.getSequence(), envelope);
+        List<ClusterEnvelope> ready = new ArrayList<>();
+        origin.drain(ready, nowMillis);
+        return ready;
+    }
+
+    /**
+     * Gives up on gaps that are older than the gap timeout and releases what was waiting behind them.
+     * Called periodically.
+     * @param nowMillis The current time.
+     * @return The envelopes that are now ready for delivery, in order per origin.
+     */
+    public List<ClusterEnvelope> expireGaps(long nowMillis) {
+        List<ClusterEnvelope> ready = new ArrayList<>();
+        for (Iterator<OriginState> it = origins.values().iterator(); it.hasNext(); ) {
+            OriginState origin = it.next();
+            if (origin.pending.isEmpty()) {
+                if (nowMillis - origin.lastSeenAt >= IDLE_ORIGIN_MILLIS) {
+                    it.remove();
+                }
+                continue;
+            }
+            if (nowMillis - origin.gapSince >= gapTimeoutMillis) {
+                long firstPending = origin.pending.firstKey();
+                skippedCount += firstPending - origin.nextSequence;
+                origin.nextSequence = firstPending;
+                origin.drain(ready, nowMillis);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * @return How many received envelopes were dropped as duplicates.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return How many sequence numbers were given up on after the gap timeout.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    // Delivery position of one origin node, plus the envelopes received ahead of it.
+    private static final class OriginState {
+        long nextSequence;
+        final TreeMap<Long, ClusterEnvelope> pending = new TreeMap<>();
+        long gapSince = -1; // When delivery got blocked by a missing sequence number; -1 while nothing is pending.
+        long lastSeenAt;
+
+        OriginState(long nextSequence) {
+            this.nextSequence = nextSequence;
+        }
+
+        void drain(List<ClusterEnvelope> ready, long nowMillis) {
+            boolean progressed = false;
+            ClusterEnvelope next;
+            while ((next = pending.remove(nextSequence)) != null) {
+                ready.add(next);
+                nextSequence++;
+                progressed = true;
+            }
+            // A gap is timed from the moment it blocked delivery, so restart the clock whenever delivery moved on.
+            if (!pending.isEmpty() && (progressed || gapSince < 0)) {
+                gapSince = nowMillis;
+            } else if (pending.isEmpty()) {
+                gapSince = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.chat.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-JVM {@link ClusterRelay}: every relay attached to the same {@link Hub} receives what any of them publishes,
+ * synchronously on the publishing thread. Used to run several "nodes" inside one test JVM.
+ */
+public class LoopbackClusterRelay implements ClusterRelay {
+
+    // Shared by default, so that several application contexts started in one JVM form a cluster.
+    private static final Hub SHARED_HUB = new Hub();
+
+    private final Hub hub;
+    private volatile Consumer<ClusterEnvelope> receiver = envelope -> { };
+
+    public LoopbackClusterRelay() {
+        this(SHARED_HUB);
+    }
+
+    public LoopbackClusterRelay(Hub hub) {
+        this.hub = hub;
+        hub.relays.add(this);
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        for (LoopbackClusterRelay relay : hub.relays) {
+            relay.receiver.accept(envelope);
+        }
+    }
+
+    @Override
+    public void setReceiver(Consumer<ClusterEnvelope> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Detaches this relay from its hub, e.g. when its node shuts down.
+     */
+    public void close() {
+        hub.relays.remove(this);
+    }
+
+    /**
+     * The shared "network" of a set of loopback relays.
+     */
+    public static final class Hub {
+        private final List<LoopbackClusterRelay> relays = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.chat.cluster;
+
+import com.mongodb.CursorType; // For tailable cursors on capped collections
+import com.mongodb.client.MongoCollection; // The capped collection used as the log
+import com.mongodb.client.MongoCursor; // Cursor over the tailed collection
+import com.mongodb.client.model.Projections; // For reading only the ids when looking for the resume position
+import org.bson.Document; // Raw form of a relayed envelope
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.context.SmartLifecycle; // For starting and stopping with the application
+import org.springframework.data.mongodb.core.CollectionOptions; // For creating the capped collection
+import org.springframework.data.mongodb.core.MongoTemplate; // Lower-level MongoDB access
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link ClusterRelay} that uses a MongoDB capped collection as a shared log: every node inserts the envelopes it
+ * publishes and tails the collection with a tailable, awaiting cursor to receive everyone's envelopes.
+ *
+ * Capped collections keep insertion order and discard the oldest documents once full, so the log needs no
+ * cleanup. Unlike change streams, tailable cursors also work on the standalone MongoDB of our Docker Compose
+ * setup, which is not a replica set.
+ *
+ * Tailing positions itself by the log's insertion order, never by timestamps, so clock differences between
+ * nodes can't hide envelopes. Positions are found by envelope id rather than counted, because a full log evicts
+ * one envelope per insert and so keeps the same length: the first tail starts right after the newest envelope in
+ * the log, and after a lost cursor (e.g. MongoDB restarted) tailing resumes right after the last one received.
+ * Tailing reopens a few envelopes early and discards them up to that one, in case some were evicted between finding
+ * the position and reopening the cursor.
+ */
+public class MongoCappedClusterRelay implements ClusterRelay, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoCappedClusterRelay.class);
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    // Envelopes re-read before the resume position, in case older ones were evicted before the cursor was reopened.
+    private static final int RESUME_OVERLAP_ENVELOPES = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final long collectionSizeBytes;
+    private final int publishQueueCapacity;
+
+    private volatile Consumer<ClusterEnvelope> receiver = envelope -> { };
+    private volatile boolean running;
+    // _id of the newest envelope in the log when this node started, then of the last envelope read from the log.
+    private volatile Object lastReceivedId;
+    private boolean positioned; // Whether the first tail has found where this node's part of the log starts.
+    private ThreadPoolExecutor publisher;
+    private Thread tailer;
+
+    /**
+     * @param mongoTemplate Template of the database shared by all nodes.
+     * @param collectionName Name of the capped collection used as the log.
+     * @param collectionSizeBytes Size of the capped collection when this node has to create it.
+     * @param publishQueueCapacity Envelopes waiting to be inserted before further ones are dropped.
+     */
+    public MongoCappedClusterRelay(MongoTemplate mongoTemplate, String collectionName, long collectionSizeBytes,
+                                   int publishQueueCapacity) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.collectionSizeBytes = collectionSizeBytes;
+        this.publishQueueCapacity = publishQueueCapacity;
+    }
+
+    /**
+     * Queues the envelope for insertion. A single publishing thread inserts envelopes in the order they were
+     * queued, so the log receives each node's envelopes in sequence order.
+     */
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        publisher.execute(() -> {
+            try {
+                mongoTemplate.insert(envelope, collectionName);
+            } catch (RuntimeException e) {
+                logger.warn("Could not relay " + envelope.getType() + " " + envelope.getId() + " to the cluster: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void setReceiver(Consumer<ClusterEnvelope> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void start() {
+        publisher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(publishQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cluster-relay-publish");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> logger.warn("Cluster relay queue is full; dropping a broadcast for peer nodes"));
+        lastReceivedId = null;
+        positioned = false;
+        running = true;
+        tailer = new Thread(this::tailUntilStopped, "cluster-relay-tail");
+        tailer.setDaemon(true); // Never keep the JVM alive just for the relay.
+        tailer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(5, TimeUnit.SECONDS);
+            tailer.join(5000); // The awaiting cursor returns within a second, then the loop sees running == false.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void tailUntilStopped() {
+        while (running) {
+            try {
+                ensureCollection();
+                tail();
+            } catch (RuntimeException e) {
+                logger.warn("Cluster relay lost its MongoDB cursor, retrying: " + e.getMessage());
+            }
+            // Also reached when the cursor simply ended, e.g. because the collection was still empty.
+            sleep(RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private void ensureCollection() {
+        if (!mongoTemplate.collectionExists(collectionName)) {
+            try {
+                mongoTemplate.createCollection(collectionName, CollectionOptions.empty().capped().size(collectionSizeBytes));
+                logger.info("Created capped collection " + collectionName + " for the cluster relay");
+            } catch (RuntimeException e) {
+                // Another node may have created it at the same moment; tailing tells us if it really is missing.
+                logger.debug("Could not create " + collectionName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void tail() {
+        MongoCollection<Document> log = mongoTemplate.getCollection(collectionName);
+        int position = resumePosition(log);
+        Object resumeAfter = lastReceivedId;
+        // The overlap is held back until the envelope it should end with shows up, and then discarded. Only if that
+        // envelope is gone is the overlap delivered (the sequencer drops what this node already had).
+        int overlap = resumeAfter != null ? Math.min(position, RESUME_OVERLAP_ENVELOPES) : 0;
+        List<Document> overlapping = new ArrayList<>(overlap);
+        try (MongoCursor<Document> cursor = log.find()
+                .skip(position - overlap) // Skipped by the server in insertion order, without evaluating a filter.
+                .cursorType(CursorType.TailableAwait)
+                .maxAwaitTime(1, TimeUnit.SECONDS)
+                .iterator()) {
+            while (running) {
+                Document document = cursor.tryNext();
+                if (document == null) {
+                    if (cursor.getServerCursor() == null) {
+                        return; // The server closed the cursor; open a new one.
+                    }
+                    continue;
+                }
+                if (overlap == 0) {
+                    deliver(document);
+                } else if (resumeAfter.equals(document.get("_id"))) {
+                    overlapping.clear();
+                    overlap = 0;
+                } else {
+                    overlapping.add(document);
+                    if (overlapping.size() == overlap) {
+                        overlapping.forEach(this::deliver);
+                        overlapping.clear();
+                        overlap = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    private void deliver(Document document) {
+        lastReceivedId = document.get("_id");
+        ClusterEnvelope envelope = mongoTemplate.getConverter().read(ClusterEnvelope.class, document);
+        try {
+            receiver.accept(envelope);
+        } catch (RuntimeException e) {
+            logger.error("Failed to handle relayed " + envelope.getType() + " " + envelope.getId(), e);
+        }
+    }
+
+    /**
+     * @return How many envelopes, in insertion order, the next tail skips: those that were already in the log when
+     *         this node started, or those up to the last envelope received. When that envelope is no longer in the
+     *         log, 0, and {@code lastReceivedId} is cleared.
+     */
+    private int resumePosition(MongoCollection<Document> log) {
+        while (!positioned) {
+            // Only what is published from now on is of interest: start right after the newest envelope.
+            Document newest = log.find().sort(new Document("$natural", -1))
+                    .projection(Projections.include("_id")).first();
+            if (newest == null) {
+                positioned = true;
+                return 0; // Empty log: everything that will be in it is new.
+            }
+            int position = positionAfter(log, newest.get("_id"));
+            if (position >= 0) {
+                lastReceivedId = newest.get("_id");
+                positioned = true;
+                return position;
+            }
+            // Evicted between the two queries, which takes a complete turnover of the log; look again.
+        }
+        Object after = lastReceivedId;
+        if (after == null) {
+            return 0; // The log was empty when this node started and nothing was received since: all of it is new.
+        }
+        int position = positionAfter(log, after);
+        if (position >= 0) {
+            return position;
+        }
+        // Envelopes already delivered are recognized by their sequence numbers and dropped.
+        lastReceivedId = null;
+        logger.warn("The cluster relay log " + collectionName + " was overwritten or recreated while the cursor was "
+                + "lost; reading it from the start, some broadcasts from peer nodes may have been missed");
+        return 0;
+    }
+
+    /**
+     * Finds an envelope by reading the ids of the log in insertion order. This reads the whole log, which is bounded
+     * by the collection size: at the default 64 MiB and envelopes of about 600 bytes, some 100,000 ids of 30 bytes,
+     * so a few MB read once at startup and once per lost cursor.
+     * @return The number of envelopes up to and including the one with the given id, or -1 if it is not in the log.
+     */
+    private static int positionAfter(MongoCollection<Document> log, Object id) {
+        int position = 0;
+        try (MongoCursor<Document> ids = log.find().projection(Projections.include("_id")).iterator()) {
+            while (ids.hasNext()) {
+                position++;
+                if (id.equals(ids.next().get("_id"))) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.chat.config;
+
+import com.example.chat.cluster.ClusterRelay; // Transport between backend nodes
+import com.example.chat.cluster.LoopbackClusterRelay; // In-JVM relay for tests
+import com.example.chat.cluster.MongoCappedClusterRelay; // Relay over a MongoDB capped collection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty; // For opt-in beans
+import org.springframework.context.annotation.Bean; // For declaring Spring beans
+import org.springframework.context.annotation.Configuration; // Marks this as a configuration class
+import org.springframework.data.mongodb.core.MongoTemplate; // Lower-level MongoDB access
+
+/**
+ * Registers the {@link ClusterRelay} when several backend nodes run behind a load balancer
+ * (chat.cluster.enabled=true). Without a relay bean every node only broadcasts to its own WebSocket clients.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "chat.cluster.relay", havingValue = "mongo", matchIfMissing = true)
+    public MongoCappedClusterRelay mongoClusterRelay(
+            MongoTemplate mongoTemplate,
+            @Value("${chat.cluster.mongo.collection:cluster_events}") String collectionName,
+            @Value("${chat.cluster.mongo.collection-size-bytes:67108864}") long collectionSizeBytes,
+            @Value("${chat.cluster.publish-queue-capacity:10000}") int publishQueueCapacity) {
+        return new MongoCappedClusterRelay(mongoTemplate, collectionName, collectionSizeBytes, publishQueueCapacity);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "chat.cluster.relay", havingValue = "loopback")
+    public LoopbackClusterRelay loopbackClusterRelay() {
+        return new LoopbackClusterRelay();
+    }
+}
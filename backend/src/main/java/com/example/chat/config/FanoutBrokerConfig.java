@@ -0,0 +1,40 @@
+package com.example.chat.config;
+
+import com.example.chat.broker.RoomFanoutBroker; // Our fan-out engine for chat rooms
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import org.springframework.beans.factory.annotation.Qualifier; // For picking the right channel beans
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.context.annotation.Bean; // For declaring Spring beans
+import org.springframework.context.annotation.Configuration; // Marks this as a configuration class
+import org.springframework.messaging.MessageChannel; // Channel towards connected clients
+import org.springframework.messaging.SubscribableChannel; // Channels the broker listens on
+import org.springframework.messaging.converter.MessageConverter; // Converter used by the messaging template
+
+/**
+ * Registers the {@link RoomFanoutBroker} that serves every "/topic" destination.
+ * Kept separate from WebSocketConfig because it consumes the channels that WebSocketConfig helps to create.
+ * As a SmartLifecycle bean, the broker subscribes itself to the inbound and broker channels on startup.
+ */
+@Configuration
+public class FanoutBrokerConfig {
+
+    @Bean
+    public RoomFanoutBroker roomFanoutBroker(
+            @Qualifier("clientInboundChannel") SubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+            @Qualifier("brokerChannel") SubscribableChannel brokerChannel,
+            @Qualifier("brokerMessageConverter") MessageConverter brokerMessageConverter,
+            @Value("${chat.broker.fanout-shards:0}") int fanoutShards,
+            @Value("${chat.broker.shard-queue-capacity:10000}") int shardQueueCapacity,
+            @Value("${chat.broker.preserve-publish-order:true}") boolean preservePublishOrder,
+            @Value("${chat.broker.metrics.max-tagged-destinations:100}") int maxTaggedDestinations,
+            MeterRegistry meterRegistry) {
+        RoomFanoutBroker broker = new RoomFanoutBroker(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                brokerMessageConverter, fanoutShards, shardQueueCapacity);
+        // Keep per-session order through the outbound channel's thread pool; without it, frames of one session
+        // may be written in a different order than they were broadcast.
+        broker.setPreservePublishOrder(preservePublishOrder);
+        broker.setMeterRegistry(meterRegistry, maxTaggedDestinations);
+        return broker;
+    }
+}
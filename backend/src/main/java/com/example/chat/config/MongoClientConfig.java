@@ -0,0 +1,27 @@
+package com.example.chat.config;
+
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer; // Adjusts Boot's MongoClient
+import org.springframework.context.annotation.Bean; // For declaring Spring beans
+import org.springframework.context.annotation.Configuration; // Marks this as a configuration class
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the MongoClient that Spring Boot creates.
+ *
+ * The driver waits up to 30 seconds by default to find a reachable server before an operation fails. That is
+ * far longer than a readiness probe waits for an answer, and it also holds up every repository call while the
+ * database is down. A shorter server selection timeout lets the Mongo health check, and with it
+ * /api/messages/health, report "not ready" promptly.
+ */
+@Configuration
+public class MongoClientConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer serverSelectionTimeoutCustomizer(
+            @Value("${chat.mongo.server-selection-timeout-ms:5000}") long serverSelectionTimeoutMs) {
+        return settings -> settings.applyToClusterSettings(cluster ->
+                cluster.serverSelectionTimeout(serverSelectionTimeoutMs, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.chat.config;
+
+import com.example.chat.model.Message; // Documents whose indexes are managed here
+import com.example.chat.model.MessageBucket; // Documents whose indexes are managed here, in two collections
+import com.example.chat.model.User; // Documents whose indexes are managed here
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.actuate.health.Health; // Result of a health check
+import org.springframework.boot.actuate.health.HealthIndicator; // Contributes to /actuator/health
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Fired once the app is fully started
+import org.springframework.context.event.EventListener; // Annotation for event listeners
+import org.springframework.data.domain.Sort; // Index direction
+import org.springframework.data.mongodb.core.index.Index; // For the TTL index of the archive
+import org.springframework.data.mongodb.core.index.IndexDefinition; // A resolved index
+import org.springframework.data.mongodb.core.MongoTemplate; // Lower-level MongoDB access
+import org.springframework.data.mongodb.core.index.IndexOperations; // For creating indexes on a collection
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver; // Reads @Indexed/@CompoundIndex
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext; // Mapping metadata for our documents
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the indexes declared by annotations on our MongoDB documents.
+ * Spring Data's automatic index creation is disabled by default and, when enabled, runs synchronously during
+ * startup and fails the whole application if MongoDB is unreachable. Instead, we ensure the indexes on a
+ * background thread once the application is ready, so a slow or missing database only produces a warning.
+ * Archived message buckets get the same indexes in their own collection, plus the TTL index that deletes them
+ * after the retention period.
+ *
+ * Some of these indexes are load-bearing rather than just fast: registration relies on the unique index on
+ * username to reject taken names. So failures are not only logged. Collections whose indexes could not be created
+ * are retried periodically and, until they succeed, reported as DOWN by the "mongoIndexes" health check (part of
+ * readiness). A unique index fails for good when the collection already holds duplicates; those have to be
+ * cleaned up by hand.
+ */
+@Component("mongoIndexesHealthIndicator")
+public class MongoIndexInitializer implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    // Every document class listed here gets its annotated indexes created (createIndex is idempotent).
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(Message.class, MessageBucket.class, User.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    // Days an archived bucket is kept; 0 keeps the archive forever. Changing it later needs the old
+    // "archivedAt_ttl" index dropped first, because MongoDB won't redefine an existing index.
+    @Value("${chat.storage.archive.retention-days:365}")
+    private int archiveRetentionDays;
+
+    // How long to wait before trying again to create indexes that failed.
+    @Value("${chat.mongo.index-retry-ms:30000}")
+    private long retryMillis;
+
+    // Collections whose indexes could not be created, with the reason; empty once everything is in place.
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+    private volatile boolean attempted;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexesInBackground() {
+        Thread worker = new Thread(this::ensureIndexesUntilDone, "mongo-index-init");
+        worker.setDaemon(true); // Never keep the JVM alive just for index creation.
+        worker.start();
+    }
+
+    private void ensureIndexesUntilDone() {
+        while (!ensureIndexes()) {
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resolves and creates the annotated indexes of every managed document class.
+     * @return True if every index is in place.
+     */
+    boolean ensureIndexes() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (Class<?> documentClass : INDEXED_DOCUMENTS) {
+            String collection = mongoTemplate.getCollectionName(documentClass);
+            try {
+                IndexOperations indexOps = mongoTemplate.indexOps(documentClass);
+                indexesOf(resolver, documentClass).forEach(indexOps::ensureIndex);
+                failures.remove(collection);
+                logger.info("Ensured MongoDB indexes for " + documentClass.getSimpleName());
+            } catch (RuntimeException e) {
+                failed(collection, e);
+            }
+        }
+        try {
+            IndexOperations archiveOps = mongoTemplate.indexOps(MessageBucket.ARCHIVE_COLLECTION);
+            indexesOf(resolver, MessageBucket.class).forEach(archiveOps::ensureIndex);
+            if (archiveRetentionDays > 0) {
+                archiveOps.ensureIndex(new Index("archivedAt", Sort.Direction.ASC).named("archivedAt_ttl")
+                        .expire(Duration.ofDays(archiveRetentionDays)));
+            }
+            failures.remove(MessageBucket.ARCHIVE_COLLECTION);
+            logger.info("Ensured MongoDB indexes for " + MessageBucket.ARCHIVE_COLLECTION);
+        } catch (RuntimeException e) {
+            failed(MessageBucket.ARCHIVE_COLLECTION, e);
+        }
+        attempted = true;
+        return failures.isEmpty();
+    }
+
+    private void failed(String collection, RuntimeException e) {
+        failures.put(collection, String.valueOf(e.getMessage()));
+        logger.error("Could not ensure MongoDB indexes for " + collection + ", retrying in " + retryMillis
+                + " ms: " + e.getMessage());
+    }
+
+    /**
+     * Reported as "mongoIndexes": DOWN while any collection is missing its indexes, naming the collections and why.
+     */
+    @Override
+    public Health health() {
+        if (!attempted) {
+            return Health.unknown().build();
+        }
+        if (failures.isEmpty()) {
+            return Health.up().build();
+        }
+        return Health.down().withDetails(failures).build();
+    }
+
+    // The resolver also returns the indexes of embedded documents, such as Message's inside MessageBucket.
+    // Those would be multikey indexes over every message of every bucket, which no query uses, so they are skipped.
+    private static List<IndexDefinition> indexesOf(MongoPersistentEntityIndexResolver resolver, Class<?> documentClass) {
+        List<IndexDefinition> indexes = new ArrayList<>();
+        for (IndexDefinition index : resolver.resolveIndexFor(documentClass)) {
+            if (index.getIndexKeys().keySet().stream().noneMatch(key -> key.contains("."))) {
+                indexes.add(index);
+            }
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.chat.config;
+
+import com.example.chat.cluster.ClusterEnvelope; // Mapped to and from MongoDB documents by MongoTemplate
+import com.example.chat.model.Message; // Also written to the write-behind spill file
+import com.example.chat.presence.PresenceUpdate; // Sent to /topic/presence with convertAndSend
+import org.apache.lucene.analysis.tokenattributes.BytesTermAttributeImpl; // Lucene token attributes (see below)
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PackedTokenAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttributeImpl;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar; // Jackson/Spring Data style bean binding
+import org.springframework.aot.hint.MemberCategory; // Which members of a class are reflectively accessed
+import org.springframework.aot.hint.RuntimeHints; // Collected reachability metadata for the native image
+import org.springframework.aot.hint.RuntimeHintsRegistrar; // Contributes to that metadata at build time
+
+/**
+ * Reflection the native executable (the 'native' Maven profile) needs but Spring AOT cannot derive by itself.
+ * Controller signatures, {@code @MessageMapping} payloads and MongoDB repositories are covered by AOT; these are
+ * the types that are only serialized from inside a service, and Lucene's token attributes, which Lucene creates
+ * through their no-argument constructors. Ignored when running on a JVM.
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                Message.class, PresenceUpdate.class, ClusterEnvelope.class);
+
+        for (Class<?> attribute : new Class<?>[] { PackedTokenAttributeImpl.class, CharTermAttributeImpl.class,
+                BytesTermAttributeImpl.class, FlagsAttributeImpl.class, KeywordAttributeImpl.class,
+                PayloadAttributeImpl.class }) {
+            hints.reflection().registerType(attribute, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.chat.config;
+
+import com.example.chat.websocket.SlowConsumerPolicy; // DISCONNECT or DROP
+import com.example.chat.websocket.SlowConsumerWebSocketHandler; // STOMP handler with our slow-client handling
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Qualifier; // For picking the right channel beans
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.context.annotation.Bean; // For declaring Spring beans
+import org.springframework.context.annotation.Configuration; // Marks this as a configuration class
+import org.springframework.messaging.support.AbstractSubscribableChannel; // The client channels
+import org.springframework.web.socket.WebSocketHandler; // The handler behind the /ws endpoint
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration; // What @EnableWebSocketMessageBroker imports
+
+/**
+ * Enables STOMP messaging over WebSocket, as @EnableWebSocketMessageBroker would, and still applies every
+ * WebSocketMessageBrokerConfigurer (see WebSocketConfig).
+ *
+ * Spring's configuration is extended rather than imported because the session decorator that enforces the
+ * per-session send limits is created inside the STOMP WebSocket handler; swapping in
+ * {@link SlowConsumerWebSocketHandler} is the only way to choose what happens to slow clients.
+ */
+@Configuration
+public class WebSocketBrokerConfiguration extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // What happens to a client whose unsent frames exceed chat.websocket.send-buffer-size-limit.
+    @Value("${chat.websocket.slow-consumer-policy:DISCONNECT}")
+    private SlowConsumerPolicy slowConsumerPolicy;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+        return new SlowConsumerWebSocketHandler(clientInboundChannel, clientOutboundChannel, slowConsumerPolicy,
+                meterRegistry);
+    }
+}
@@ -5,16 +5,64 @@
 // Configuration for WebSocket and STOMP messaging.
 package com.example.chat.config;
 
+import com.example.chat.websocket.SendRateLimitInterceptor; // Per-connection limit on chat messages
+import com.example.chat.websocket.WireFormats; // The CBOR content type
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.autoconfigure.thread.Threading; // Tells whether virtual threads are enabled and available
 import org.springframework.context.annotation.Configuration; // Marks this as a configuration class
+import org.springframework.core.env.Environment; // For reading spring.threads.virtual.enabled
+import org.springframework.core.task.VirtualThreadTaskExecutor; // Runs every task on a new virtual thread
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder; // For an ObjectMapper configured like Boot's
+import org.springframework.messaging.converter.MappingJackson2MessageConverter; // Jackson-based payload converter
+import org.springframework.messaging.converter.MessageConverter; // Converts payloads to and from bytes
+import org.springframework.messaging.simp.config.ChannelRegistration; // For tuning the inbound/outbound channels
 import org.springframework.messaging.simp.config.MessageBrokerRegistry; // For configuring the message broker
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker; // Enables WebSocket message handling
+import org.springframework.messaging.simp.config.TaskExecutorRegistration; // For sizing channel thread pools
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry; // For registering STOMP endpoints
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer; // Interface to configure WebSocket message handling
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration; // For per-session send limits
+
+import java.util.List;
 
 @Configuration // Indicates that this class provides Spring configuration.
-@EnableWebSocketMessageBroker // This annotation enables WebSocket message handling, backed by a message broker.
+// WebSocket message handling, backed by a message broker, is enabled by WebSocketBrokerConfiguration.
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private SendRateLimitInterceptor sendRateLimitInterceptor;
+
+    // Thread pools of the clientInboundChannel (frames received from clients, incl. @MessageMapping calls) and
+    // the clientOutboundChannel (frames sent to clients, incl. every fan-out delivery).
+    // A value of 0 keeps Spring's default for that setting. Ignored when the channels run on virtual threads.
+    @Value("${chat.websocket.inbound.core-pool-size:0}")
+    private int inboundCorePoolSize;
+    @Value("${chat.websocket.inbound.max-pool-size:0}")
+    private int inboundMaxPoolSize;
+    @Value("${chat.websocket.inbound.queue-capacity:0}")
+    private int inboundQueueCapacity;
+    @Value("${chat.websocket.outbound.core-pool-size:0}")
+    private int outboundCorePoolSize;
+    @Value("${chat.websocket.outbound.max-pool-size:0}")
+    private int outboundMaxPoolSize;
+    @Value("${chat.websocket.outbound.queue-capacity:0}")
+    private int outboundQueueCapacity;
+
+    // Per-session limits for frames that could not be written to the socket yet.
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
     /**
      * Registers STOMP (Simple Text Oriented Messaging Protocol) endpoints.
      * These are the URLs clients will use to connect to our WebSocket server.
@@ -29,6 +77,11 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // .withSockJS() enables SockJS fallback options for browsers that don't fully support WebSockets,
         // providing a more robust connection.
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+
+        // Defines the "/ws-native" endpoint for clients that speak plain WebSocket (ws://localhost:8080/ws-native).
+        // Only these sessions can receive binary frames, and with them the CBOR payload encoding (see WireFormats).
+        // Tomcat negotiates permessage-deflate compression with every client that asks for it in the handshake.
+        registry.addEndpoint("/ws-native").setAllowedOriginPatterns("*");
     }
 
     /**
@@ -43,8 +96,94 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.setApplicationDestinationPrefixes("/app");
 
         // "/topic" is the prefix for client-side subscriptions.
-        // Clients subscribe to destinations starting with "/topic" (e.g., "/topic/public") to receive messages.
-        // The simple broker handles broadcasting messages to all subscribed clients.
-        registry.enableSimpleBroker("/topic");
+        // Clients subscribe to destinations starting with "/topic" (e.g., "/topic/public" or "/topic/room.{id}")
+        // to receive messages. Those destinations are served by RoomFanoutBroker (see FanoutBrokerConfig).
+        // The simple broker only keeps "/queue" for per-user destinations, and answers CONNECT frames.
+        registry.enableSimpleBroker("/queue");
+    }
+
+    /**
+     * Adds CBOR as a payload encoding next to Spring's defaults (JSON, text and byte arrays).
+     * The CBOR converter is only used for messages with a content-type:application/cbor header, so JSON remains
+     * the encoding of everything else, including the broadcasts, which RoomFanoutBroker transcodes for CBOR
+     * subscribers.
+     * @param messageConverters The converters to use in addition to the defaults.
+     * @return True, to keep the default converters.
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(WireFormats.CBOR);
+        cborConverter.setObjectMapper(Jackson2ObjectMapperBuilder.cbor().build()); // JavaTimeModule, ISO dates
+        cborConverter.setStrictContentTypeMatch(true);
+        messageConverters.add(cborConverter);
+        return true;
+    }
+
+    /**
+     * Sizes the thread pool that processes frames received from clients, or, in virtual-thread mode, handles
+     * every frame on its own virtual thread so handlers blocked on MongoDB don't hold up other clients.
+     * Chat messages over the per-connection rate limit are dropped before they reach the pool.
+     * @param registration The registration for the clientInboundChannel.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(sendRateLimitInterceptor);
+        if (useVirtualThreads()) {
+            registration.executor(new VirtualThreadTaskExecutor("clientInboundChannel-"));
+        } else {
+            configurePool(registration.taskExecutor(), inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity);
+        }
+    }
+
+    /**
+     * Sizes the thread pool that writes frames to clients, or switches it to virtual threads.
+     * Every fan-out delivery passes through it.
+     * @param registration The registration for the clientOutboundChannel.
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (useVirtualThreads()) {
+            registration.executor(new VirtualThreadTaskExecutor("clientOutboundChannel-"));
+        } else {
+            configurePool(registration.taskExecutor(), outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity);
+        }
+    }
+
+    // Virtual-thread mode follows Spring Boot's spring.threads.virtual.enabled, which also moves Tomcat's request
+    // handling onto virtual threads. It only takes effect on Java 21 or later.
+    private boolean useVirtualThreads() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return true;
+        }
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            logger.warn("spring.threads.virtual.enabled is set, but virtual threads need Java 21+; keeping the thread pools");
+        }
+        return false;
+    }
+
+    // Applies only the pool settings that were configured, leaving Spring's defaults for the rest.
+    private static void configurePool(TaskExecutorRegistration pool, int corePoolSize, int maxPoolSize, int queueCapacity) {
+        if (corePoolSize > 0) {
+            pool.corePoolSize(corePoolSize);
+        }
+        if (maxPoolSize > 0) {
+            pool.maxPoolSize(maxPoolSize);
+        }
+        if (queueCapacity > 0) {
+            pool.queueCapacity(queueCapacity);
+        }
+    }
+
+    /**
+     * Limits how much a single slow session may buffer and for how long a send may block,
+     * so one slow client cannot tie up the outbound threads. What happens when a client exceeds the buffer
+     * limit is chosen by chat.websocket.slow-consumer-policy (see SlowConsumerSessionDecorator).
+     * @param registration The registration for WebSocket transport settings.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimit);
     }
 }
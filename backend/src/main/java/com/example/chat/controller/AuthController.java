@@ -6,14 +6,16 @@
 package com.example.chat.controller;
 
 import com.example.chat.model.User; // Import the User model
-import com.example.chat.repository.UserRepository; // Import the UserRepository
+import com.example.chat.service.UserService; // Cached user lookups and password hashing
 import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
 import org.springframework.http.HttpStatus; // For HTTP status codes
 import org.springframework.http.ResponseEntity; // For building HTTP responses
 import org.springframework.web.bind.annotation.*; // For REST annotations like @RestController, @PostMapping, @RequestBody, @CrossOrigin
 
 import java.util.Map; // For handling login credentials as a map
-import java.util.Optional; // For optional user lookup
+import java.util.concurrent.CompletableFuture; // For answering once the password has been hashed
+import java.util.concurrent.CompletionException; // Wraps failures of asynchronous steps
+import java.util.concurrent.RejectedExecutionException; // Thrown when the hashing pool is saturated
 
 @RestController // This annotation combines @Controller and @ResponseBody, indicating that this class handles REST requests.
 @RequestMapping("/api/auth") // Base path for all endpoints defined in this controller (e.g., /api/auth/register).
@@ -21,47 +23,62 @@ import java.util.Optional; // For optional user lookup
                                                 // In production, this should be restricted to your frontend's domain.
 public class AuthController {
 
-    @Autowired // Spring automatically injects an instance of UserRepository.
-    private UserRepository userRepository;
+    @Autowired // Spring automatically injects an instance of UserService.
+    private UserService userService;
 
     /**
      * Handles user registration via a POST request to /api/auth/register.
+     * The password is hashed on the password hashing pool, so the request thread is released in the meantime.
      * @param user The User object received in the request body (contains username and password).
-     * @return ResponseEntity indicating success or failure.
+     * @return ResponseEntity indicating success or failure, once the user has been stored.
      */
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@RequestBody User user) {
-        // Check if a user with the given username already exists in the database.
-        if (userRepository.findByUsername(user.getUsername()).isPresent()) {
-            return new ResponseEntity<>("Username is already taken!", HttpStatus.BAD_REQUEST); // 400 Bad Request
+    public CompletableFuture<ResponseEntity<?>> registerUser(@RequestBody User user) {
+        if (isBlank(user.getUsername()) || isBlank(user.getPassword())) {
+            return CompletableFuture.completedFuture(
+                    new ResponseEntity<>("Username and password are required!", HttpStatus.BAD_REQUEST)); // 400 Bad Request
         }
-        // If username is unique, save the new user to MongoDB.
-        // WARNING: In a real-world application, the password MUST be hashed and salted before storing.
-        userRepository.save(user);
-        return new ResponseEntity<>("User registered successfully!", HttpStatus.OK); // 200 OK
+        // A single insert: the unique index on username rejects names that are already taken.
+        return userService.register(user.getUsername(), user.getPassword())
+                .<ResponseEntity<?>>thenApply(created -> created
+                        ? new ResponseEntity<>("User registered successfully!", HttpStatus.OK) // 200 OK
+                        : new ResponseEntity<>("Username is already taken!", HttpStatus.BAD_REQUEST)) // 400 Bad Request
+                .exceptionally(AuthController::busyOrRethrow);
     }
 
     /**
      * Handles user login via a POST request to /api/auth/login.
      * @param credentials A Map containing "username" and "password" from the request body.
-     * @return ResponseEntity with success message (and username) or error message.
+     * @return ResponseEntity with success message (and username) or error message, once the password is verified.
      */
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@RequestBody Map<String, String> credentials) {
+    public CompletableFuture<ResponseEntity<?>> loginUser(@RequestBody Map<String, String> credentials) {
         String username = credentials.get("username");
         String password = credentials.get("password");
+        if (isBlank(username) || password == null) {
+            return CompletableFuture.completedFuture(
+                    new ResponseEntity<>("Invalid credentials!", HttpStatus.UNAUTHORIZED)); // 401 Unauthorized
+        }
 
-        // Attempt to find the user by username in the database.
-        Optional<User> userOptional = userRepository.findByUsername(username);
+        return userService.authenticate(username, password)
+                .<ResponseEntity<?>>thenApply(valid -> valid
+                        // For simplicity, we just return the username.
+                        // In a real application, a JSON Web Token (JWT) would be generated and returned here for secure session management.
+                        ? new ResponseEntity<>(Map.of("username", username, "message", "Login successful!"), HttpStatus.OK) // 200 OK
+                        : new ResponseEntity<>("Invalid credentials!", HttpStatus.UNAUTHORIZED)) // 401 Unauthorized
+                .exceptionally(AuthController::busyOrRethrow);
+    }
 
-        // Check if the user exists AND if the provided password matches the stored password.
-        // WARNING: In a real-world application, compare hashed passwords using a secure method (e.g., BCrypt).
-        if (userOptional.isPresent() && userOptional.get().getPassword().equals(password)) {
-            // For simplicity, we just return the username.
-            // In a real application, a JSON Web Token (JWT) would be generated and returned here for secure session management.
-            return new ResponseEntity<>(Map.of("username", username, "message", "Login successful!"), HttpStatus.OK); // 200 OK
-        } else {
-            return new ResponseEntity<>("Invalid credentials!", HttpStatus.UNAUTHORIZED); // 401 Unauthorized
+    // A saturated hashing pool means "try again shortly", not a server error.
+    private static ResponseEntity<?> busyOrRethrow(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof RejectedExecutionException) {
+            return new ResponseEntity<>("Server is busy, please try again!", HttpStatus.SERVICE_UNAVAILABLE); // 503
         }
+        throw failure instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
     }
-}
\ No newline at end of file
+}
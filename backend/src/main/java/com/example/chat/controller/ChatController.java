@@ -1,80 +1,338 @@
 package com.example.chat.controller;
 
+import com.example.chat.broker.ChatRooms; // Room naming rules
 import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageCursor; // Keyset pagination cursor for message history
+import com.example.chat.presence.PresenceRegistry; // Who is online
 import com.example.chat.repository.MessageRepository; // Import the MessageRepository
+import com.example.chat.search.MessageSearchIndex; // Full-text index of the history
+import com.example.chat.service.ChatBroadcastService; // Broadcasts to the subscribers of a room
+import com.example.chat.service.MessageHistoryService; // Cached history reads and write-behind recording
+import com.fasterxml.jackson.core.JsonGenerator; // For writing JSON incrementally
+import com.fasterxml.jackson.databind.ObjectMapper; // Spring Boot's configured JSON mapper
+import com.fasterxml.jackson.databind.ObjectWriter; // Reusable, pre-configured writer
+import com.fasterxml.jackson.databind.SerializationFeature; // For tuning the streaming writer
+import io.micrometer.core.instrument.Counter; // For counting joins
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.Timer; // For timing the stages of publishing a message
+import jakarta.annotation.PostConstruct; // For registering the meters once the registry is injected
+import org.bson.types.ObjectId; // For generating message ids before the message is stored
 import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.actuate.health.HealthComponent; // Result of a health check
+import org.springframework.boot.actuate.health.HealthEndpoint; // Runs the actuator health checks
+import org.springframework.boot.actuate.health.Status; // UP, DOWN, ...
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.DestinationVariable; // For the room id in a destination
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler; // For answering failed WebSocket messages
 import org.springframework.messaging.handler.annotation.MessageMapping; // For WebSocket message mapping
 import org.springframework.messaging.handler.annotation.Payload; // For extracting message payload
-import org.springframework.messaging.handler.annotation.SendTo; // For broadcasting messages over WebSocket
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor; // For accessing STOMP headers (like session attributes)
+import org.springframework.messaging.simp.annotation.SendToUser; // For replying to the sending session only
 import org.springframework.stereotype.Controller; // Marks this as a Spring MVC controller (needed for @MessageMapping)
 import org.springframework.web.bind.annotation.CrossOrigin; // For CORS on REST endpoints
 import org.springframework.web.bind.annotation.GetMapping; // For GET REST endpoint
 import org.springframework.web.bind.annotation.RequestMapping; // For REST request mapping
+import org.springframework.web.bind.annotation.RequestParam; // For optional query parameters
 import org.springframework.web.bind.annotation.RestController; // For combined REST and WebSocket controller
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody; // For writing large responses incrementally
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException; // For rejecting malformed time filters
+import java.time.temporal.ChronoUnit; // For truncating timestamps to MongoDB precision
 import java.util.List; // For returning lists of messages
+import java.util.stream.Stream; // For cursor-backed history streaming
 
 @RestController // Indicates this class provides RESTful services (e.g., for /api/messages).
 @Controller // Also required for Spring's WebSocket message handling (@MessageMapping).
 @RequestMapping("/api/messages") // Base path for REST endpoints in this controller.
-@CrossOrigin(origins = "*") // Allows HTTP requests from the Angular frontend.
+@CrossOrigin(origins = "*", exposedHeaders = { // Allows HTTP requests from the Angular frontend.
+        ChatController.PREVIOUS_CURSOR_HEADER, ChatController.NEXT_CURSOR_HEADER, ChatController.HAS_MORE_HEADER})
 public class ChatController {
 
+    // Response headers carrying the pagination state of GET /api/messages.
+    static final String PREVIOUS_CURSOR_HEADER = "X-Prev-Cursor"; // Pass as ?before= to load older messages.
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor"; // Pass as ?after= to load newer messages.
+    static final String HAS_MORE_HEADER = "X-Has-More"; // Whether more messages exist in the requested direction.
+
     @Autowired // Spring automatically injects an instance of MessageRepository.
     private MessageRepository messageRepository;
-    
+
+    @Autowired // Serves recent history from memory and persists sent messages in batches.
+    private MessageHistoryService messageHistoryService;
+
+    @Autowired // Used to broadcast messages to the subscribers of a room.
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired // Serves full-text searches without touching MongoDB.
+    private MessageSearchIndex messageSearchIndex;
+
+    @Autowired // Spring Boot's ObjectMapper, already configured for LocalDateTime.
+    private ObjectMapper objectMapper;
+
+    @Autowired // Tracks the sessions of every online user.
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired // Runs the readiness health group (see management.endpoint.health.group.readiness).
+    private HealthEndpoint healthEndpoint;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.history.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.history.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${chat.search.default-results:20}")
+    private int defaultSearchResults;
+
+    @Value("${chat.search.max-results:100}")
+    private int maxSearchResults;
+
+    // Whether "joined!" notices are still broadcast as chat messages, next to the updates on /topic/presence.
+    @Value("${chat.presence.chat-notices:false}")
+    private boolean presenceChatNotices;
+
+    private Timer broadcastTimer;
+    private Timer persistTimer;
+    private Counter joinCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        broadcastTimer = Timer.builder("chat.messages.publish").tag("stage", "broadcast")
+                .description("Time to hand a sent message to the broker (and the cluster relay)").register(meterRegistry);
+        persistTimer = Timer.builder("chat.messages.publish").tag("stage", "persist")
+                .description("Time to add a sent message to the history cache and the write-behind queue")
+                .register(meterRegistry);
+        joinCounter = Counter.builder("chat.users.events").tag("event", "join")
+                .description("Users who joined the chat").register(meterRegistry);
+    }
+
+    /**
+     * Readiness probe: OK only once the application accepts traffic and MongoDB answers a ping.
+     * Render (or a Kubernetes readinessProbe) should route clients to this instance only while it returns 200.
+     * Liveness alone is available at /actuator/health/liveness.
+     * @return 200 when ready, 503 otherwise.
+     */
     @GetMapping("/health")
     public ResponseEntity<String> healthCheck() {
-        // This endpoint will return an OK status as soon as the application context
-        // and web server are listening. It doesn't check MongoDB connection,
-        // but it's a quick way to tell Render the app process is responsive.
-        return new ResponseEntity<>("Backend is healthy!", HttpStatus.OK);
+        HealthComponent readiness = healthEndpoint.healthForPath("readiness");
+        if (readiness != null && Status.UP.equals(readiness.getStatus())) {
+            return new ResponseEntity<>("Backend is healthy!", HttpStatus.OK);
+        }
+        return new ResponseEntity<>("Backend is not ready!", HttpStatus.SERVICE_UNAVAILABLE);
     }
 
     /**
-     * REST Endpoint: Retrieves all chat messages from the database.
-     * This is typically called by the frontend when a user logs in to load chat history.
-     * Accessible via GET request to http://localhost:8080/api/messages.
-     * @return A List of all Message objects, ordered by timestamp.
+     * REST Endpoint: Retrieves one page of chat history using keyset pagination on (timestamp, id).
+     * This is typically called by the frontend when a user logs in to load the most recent messages.
+     * Recent pages are served from memory; only older pages reach MongoDB.
+     * Accessible via GET request to http://localhost:8080/api/messages?limit=50.
+     * Older pages are requested with ?before={X-Prev-Cursor}, newer ones with ?after={X-Next-Cursor}.
+     * @param room Optional room id; defaults to the public room.
+     * @param before Optional cursor; only messages older than it are returned.
+     * @param after Optional cursor; only messages newer than it are returned.
+     * @param limit Optional page size, capped at chat.history.max-page-size.
+     * @return The page of messages ordered by timestamp, with cursor headers for the neighbouring pages.
      */
     @GetMapping
-    public List<Message> getAllMessages() {
-        return messageRepository.findAllByOrderByTimestampAsc(); // Uses the custom query method from MessageRepository.
+    public ResponseEntity<?> getMessages(@RequestParam(required = false) String room,
+                                         @RequestParam(required = false) String before,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(required = false) Integer limit) {
+        if (before != null && after != null) {
+            return new ResponseEntity<>("Only one of 'before' and 'after' may be given!", HttpStatus.BAD_REQUEST);
+        }
+        if (limit != null && limit <= 0) {
+            return new ResponseEntity<>("'limit' must be positive!", HttpStatus.BAD_REQUEST);
+        }
+
+        String roomId;
+        MessageCursor beforeCursor;
+        MessageCursor afterCursor;
+        try {
+            roomId = ChatRooms.normalize(room);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Invalid room id!", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            beforeCursor = before != null ? MessageCursor.decode(before) : null;
+            afterCursor = after != null ? MessageCursor.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Invalid history cursor!", HttpStatus.BAD_REQUEST);
+        }
+
+        int pageSize = Math.min(limit != null ? limit : defaultPageSize, maxPageSize);
+        // Fetch one extra message to find out whether another page exists, without a count query.
+        List<Message> page = messageHistoryService.findPage(roomId, beforeCursor, afterCursor, pageSize + 1);
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            // The extra message sits at the far end of the page in the direction we were walking.
+            page = afterCursor != null ? page.subList(0, pageSize) : page.subList(1, page.size());
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(HAS_MORE_HEADER, String.valueOf(hasMore));
+        if (!page.isEmpty()) {
+            response.header(PREVIOUS_CURSOR_HEADER, MessageCursor.of(page.get(0)).encode());
+            response.header(NEXT_CURSOR_HEADER, MessageCursor.of(page.get(page.size() - 1)).encode());
+        }
+        return response.body(page);
     }
 
     /**
-     * WebSocket Endpoint: Handles incoming chat messages sent by clients.
+     * REST Endpoint: Streams the complete chat history as a single JSON array.
+     * Messages are written one by one while a MongoDB cursor is iterated, so memory use stays constant
+     * no matter how large the history is. Intended for exports and backfills rather than the chat UI.
+     * Accessible via GET request to http://localhost:8080/api/messages/stream.
+     * @param room Optional room id; defaults to the public room.
+     * @return A body that writes the JSON array directly to the response output stream.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> streamMessages(@RequestParam(required = false) String room) {
+        String roomId;
+        try {
+            roomId = ChatRooms.normalize(room);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Invalid room id!", HttpStatus.BAD_REQUEST);
+        }
+        // Flushing after every message would turn each one into its own network write; let the buffer fill instead.
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<Message> messages = messageRepository.streamAllOrdered(roomId);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (Message message : (Iterable<Message>) messages::iterator) {
+                    writer.writeValue(generator, message);
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * REST Endpoint: Full-text search over the chat history, served from the local search index.
+     * Accessible via GET request to http://localhost:8080/api/messages/search?q=deploy&sender=alice.
+     * The query accepts words (all must match), "quoted phrases", prefix*, -excluded words and a | b.
+     * @param q The search text.
+     * @param room Optional room id; without it every room is searched.
+     * @param sender Optional username; only that user's messages are returned.
+     * @param from Optional ISO date-time (e.g. 2024-06-01T00:00:00); only messages at or after it are returned.
+     * @param to Optional ISO date-time; only messages at or before it are returned.
+     * @param limit Optional number of results, capped at chat.search.max-results.
+     * @return The matching messages, newest first.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchMessages(@RequestParam(required = false) String q,
+                                            @RequestParam(required = false) String room,
+                                            @RequestParam(required = false) String sender,
+                                            @RequestParam(required = false) String from,
+                                            @RequestParam(required = false) String to,
+                                            @RequestParam(required = false) Integer limit) {
+        if (q == null || q.isBlank()) {
+            return new ResponseEntity<>("'q' must not be empty!", HttpStatus.BAD_REQUEST);
+        }
+        if (limit != null && limit <= 0) {
+            return new ResponseEntity<>("'limit' must be positive!", HttpStatus.BAD_REQUEST);
+        }
+
+        String roomId;
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            roomId = room != null ? ChatRooms.normalize(room) : null;
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Invalid room id!", HttpStatus.BAD_REQUEST);
+        }
+        try {
+            fromTime = from != null ? LocalDateTime.parse(from) : null;
+            toTime = to != null ? LocalDateTime.parse(to) : null;
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity<>("'from' and 'to' must be ISO date-times!", HttpStatus.BAD_REQUEST);
+        }
+
+        int results = Math.min(limit != null ? limit : defaultSearchResults, maxSearchResults);
+        return ResponseEntity.ok(messageSearchIndex.search(q, roomId, sender, fromTime, toTime, results));
+    }
+
+    /**
+     * WebSocket Endpoint: Handles incoming chat messages sent by clients to the public room.
      * Messages sent to "/app/chat.sendMessage" will be routed to this method.
      * @param chatMessage The Message object received from the client.
-     * @return The same Message object, which will then be broadcasted to subscribers of "/topic/public".
      */
     @MessageMapping("/chat.sendMessage")
-    @SendTo("/topic/public") // Broadcasts the return value to all clients subscribed to "/topic/public".
-    public Message sendMessage(@Payload Message chatMessage) {
-        chatMessage.setTimestamp(LocalDateTime.now()); // Sets the server-side timestamp to ensure accuracy.
-        messageRepository.save(chatMessage); // Saves the received message to MongoDB.
-        return chatMessage; // The message is returned and broadcasted.
+    public void sendMessage(@Payload Message chatMessage) {
+        publish(ChatRooms.PUBLIC_ROOM, chatMessage);
+    }
+
+    /**
+     * WebSocket Endpoint: Handles incoming chat messages sent by clients to a chat room.
+     * Messages sent to "/app/chat.room.{roomId}.sendMessage" will be routed to this method and broadcast
+     * to the subscribers of "/topic/room.{roomId}".
+     * An invalid room id is answered on "/user/queue/errors" by {@link #handleInvalidMessage}, and nothing is sent.
+     * @param roomId The room id taken from the destination.
+     * @param chatMessage The Message object received from the client.
+     */
+    @MessageMapping("/chat.room.{roomId}.sendMessage")
+    public void sendRoomMessage(@DestinationVariable String roomId, @Payload Message chatMessage) {
+        publish(ChatRooms.normalize(roomId), chatMessage);
+    }
+
+    /**
+     * WebSocket error handler: tells the sender why its message was rejected, e.g. for an invalid room id.
+     * Without it, Spring would only log the exception and the message would silently disappear.
+     * The reply goes to the sending session alone; clients receive it by subscribing to "/user/queue/errors".
+     * @param e The exception thrown while handling the message.
+     * @return The reason the message was rejected.
+     */
+    @MessageExceptionHandler(IllegalArgumentException.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public String handleInvalidMessage(IllegalArgumentException e) {
+        return e.getMessage();
+    }
+
+    /**
+     * Broadcasts a message to its room first and then records it in the history: the recent-message cache
+     * sees it immediately, and the write-behind queue persists it to MongoDB in batches off this thread.
+     */
+    private void publish(String roomId, Message chatMessage) {
+        // The id is assigned here rather than by MongoDB, because the message is broadcast before it is stored.
+        chatMessage.setId(new ObjectId().toHexString());
+        chatMessage.setRoomId(roomId);
+        // Server-side timestamp, truncated to the millisecond precision MongoDB stores, so broadcast and
+        // stored copies of the message order identically.
+        chatMessage.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        broadcastTimer.record(() -> chatBroadcastService.broadcast(chatMessage)); // Broadcast to all subscribers of the room.
+        persistTimer.record(() -> messageHistoryService.record(chatMessage)); // Cached, then persisted in batches.
     }
 
     /**
      * WebSocket Endpoint: Handles new users joining the chat.
-     * Messages sent to "/app/chat.addUser" will be routed to this method.
+     * Messages sent to "/app/chat.addUser" will be routed to this method. The session is added to the presence
+     * registry, and if it is the user's first session the join is broadcast to "/topic/public" on every node;
+     * another tab of a user who is already online joins silently.
      * @param chatMessage The Message object (expected to contain the sender's username, content like "joined!").
      * @param headerAccessor Provides access to STOMP message headers, used to store the username in the WebSocket session.
-     * @return The Message object, which will be broadcasted to "/topic/public" to announce a user joined.
      */
     @MessageMapping("/chat.addUser")
-    @SendTo("/topic/public") // Broadcasts the return value to all clients subscribed to "/topic/public".
-    public Message addUser(@Payload Message chatMessage,
-                           SimpMessageHeaderAccessor headerAccessor) {
+    public void addUser(@Payload Message chatMessage,
+                        SimpMessageHeaderAccessor headerAccessor) {
         // Add username in web socket session
         headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
-        chatMessage.setTimestamp(LocalDateTime.now()); // Set server-side timestamp.
+        if (!presenceRegistry.sessionJoined(headerAccessor.getSessionId(), chatMessage.getSender())) {
+            return; // Already online in another session.
+        }
+        joinCounter.increment();
+        if (!presenceChatNotices) {
+            return; // Clients learn about the join from /topic/presence.
+        }
+        chatMessage.setRoomId(ChatRooms.PUBLIC_ROOM);
+        chatMessage.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)); // Set server-side timestamp.
         // For simplicity, "user joined" messages are not saved to the database, but you could choose to.
-        return chatMessage; // The message is returned and broadcasted.
+        chatBroadcastService.announce(chatMessage); // Broadcast to all subscribers of "/topic/public".
     }
 }
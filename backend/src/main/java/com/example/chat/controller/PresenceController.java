@@ -0,0 +1,30 @@
+package com.example.chat.controller;
+
+import com.example.chat.presence.PresenceRegistry; // Who is online
+import com.example.chat.presence.PresenceSnapshot; // Online users plus the update sequence they reflect
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.web.bind.annotation.CrossOrigin; // For CORS on REST endpoints
+import org.springframework.web.bind.annotation.GetMapping; // For GET REST endpoint
+import org.springframework.web.bind.annotation.RequestMapping; // For REST request mapping
+import org.springframework.web.bind.annotation.RestController; // For REST controllers
+
+@RestController
+@RequestMapping("/api/presence")
+@CrossOrigin(origins = "*") // Allows requests from the Angular frontend.
+public class PresenceController {
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    /**
+     * REST Endpoint: Returns everyone currently online.
+     * Clients subscribe to /topic/presence first, then fetch this snapshot and apply the updates whose sequence
+     * is greater than the snapshot's.
+     * Accessible via GET request to http://localhost:8080/api/presence.
+     * @return The online users and the sequence number of the last update they include.
+     */
+    @GetMapping
+    public PresenceSnapshot getPresence() {
+        return presenceRegistry.snapshot();
+    }
+}
@@ -10,19 +10,30 @@
 // This class listens for WebSocket connection and disconnection events.
 package com.example.chat.listener;
 
+import com.example.chat.broker.ChatRooms; // Room naming rules
 import com.example.chat.model.Message; // Import your Message model
+import com.example.chat.presence.PresenceRegistry; // Who is online
+import com.example.chat.service.ChatBroadcastService; // Broadcasts to the subscribers of a room
+import io.micrometer.core.instrument.Counter; // For counting connects, disconnects and leaves
+import io.micrometer.core.instrument.Gauge; // For exposing the number of open sessions
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import jakarta.annotation.PostConstruct; // For registering the meters once the registry is injected
 import org.slf4j.Logger; // For logging
 import org.slf4j.LoggerFactory; // For logging
 import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
 import org.springframework.context.event.EventListener; // Annotation for event listeners
-import org.springframework.messaging.simp.SimpMessageSendingOperations; // To send messages to WebSocket clients
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor; // To access STOMP headers
 import org.springframework.stereotype.Component; // Marks this as a Spring component
 import org.springframework.web.socket.messaging.SessionConnectedEvent; // Event for WebSocket session connected
 import org.springframework.web.socket.messaging.SessionDisconnectEvent; // Event for WebSocket session disconnected
 
+import java.util.Map; // Session attributes
 import java.util.Objects; // For null-safe operations
+import java.util.Set; // Ids of the open sessions
+import java.util.concurrent.ConcurrentHashMap; // For a thread-safe set of session ids
 import java.time.LocalDateTime; // For timestamping messages
+import java.time.temporal.ChronoUnit; // For truncating timestamps to millisecond precision
 
 @Component // Marks this class as a Spring-managed component, so it can be scanned and its event listeners can function.
 public class WebSocketEventListener {
@@ -30,9 +41,39 @@ public class WebSocketEventListener {
     // Logger for this class, used for console output.
     private static final Logger logger = LoggerFactory.getLogger(WebSocketEventListener.class);
 
-    @Autowired // Spring automatically injects an instance of SimpMessageSendingOperations.
-               // This is used to send messages to specific users or broadcast to topics.
-    private SimpMessageSendingOperations messagingTemplate;
+    @Autowired // Spring automatically injects the broadcast service.
+               // This is used to broadcast join/leave notifications to the public room.
+    private ChatBroadcastService chatBroadcastService;
+
+    @Autowired // Tracks the sessions of every online user.
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Whether joins and leaves are still broadcast as chat messages, next to the updates on /topic/presence.
+    @Value("${chat.presence.chat-notices:false}")
+    private boolean presenceChatNotices;
+
+    // Ids of the sessions that completed the STOMP CONNECT; a set, so a repeated disconnect event is harmless.
+    private final Set<String> openSessions = ConcurrentHashMap.newKeySet();
+
+    private Counter connectCounter;
+    private Counter disconnectCounter;
+    private Counter leaveCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("chat.sessions.active", openSessions, Set::size)
+                .description("Open STOMP sessions on this node").register(meterRegistry);
+        connectCounter = Counter.builder("chat.sessions.events").tag("event", "connect")
+                .description("STOMP sessions opened").register(meterRegistry);
+        disconnectCounter = Counter.builder("chat.sessions.events").tag("event", "disconnect")
+                .description("STOMP sessions closed").register(meterRegistry);
+        // Joins are counted by ChatController.addUser, where the username becomes known.
+        leaveCounter = Counter.builder("chat.users.events").tag("event", "leave")
+                .description("Users who left the chat").register(meterRegistry);
+    }
 
     /**
      * Listens for WebSocket Session Connected events.
@@ -42,22 +83,30 @@ public class WebSocketEventListener {
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (headerAccessor.getSessionId() != null && openSessions.add(headerAccessor.getSessionId())) {
+            connectCounter.increment();
+        }
 
         // Retrieve the username from the session attributes that was stored during chat.addUser (Day 1).
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
+        // The CONNECT_ACK this event carries may have no session attributes at all.
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        String username = sessionAttributes != null ? (String) sessionAttributes.get("username") : null;
 
-        if (username != null) {
+        // Only announce the user's first session; another tab of a user who is already online stays quiet.
+        if (username != null && presenceRegistry.sessionJoined(headerAccessor.getSessionId(), username)
+                && presenceChatNotices) {
             logger.info("User connected: " + username);
 
             // Create a message to broadcast that a user has joined.
             Message joinMessage = new Message();
             joinMessage.setSender(username);
             joinMessage.setContent("joined!");
-            joinMessage.setTimestamp(LocalDateTime.now()); // Set server-side timestamp
+            joinMessage.setRoomId(ChatRooms.PUBLIC_ROOM);
+            joinMessage.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)); // Set server-side timestamp
 
             // Send the join message to the public topic.
             // All clients subscribed to /topic/public will receive this message.
-            messagingTemplate.convertAndSend("/topic/public", joinMessage);
+            chatBroadcastService.announce(joinMessage);
         }
     }
 
@@ -68,23 +117,30 @@ public class WebSocketEventListener {
      */
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (openSessions.remove(event.getSessionId())) {
+            disconnectCounter.increment();
+        }
 
-        // Retrieve the username from the session attributes.
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
+        // The registry knows the session's user, and whether it was their last open session.
+        String username = presenceRegistry.sessionClosed(event.getSessionId());
 
         if (username != null) {
             logger.info("User disconnected: " + username);
+            leaveCounter.increment();
+            if (!presenceChatNotices) {
+                return; // Clients learn about the leave from /topic/presence.
+            }
 
             // Create a message to broadcast that a user has left.
             Message leaveMessage = new Message();
             leaveMessage.setSender(username);
             leaveMessage.setContent("left!");
-            leaveMessage.setTimestamp(LocalDateTime.now()); // Set server-side timestamp
+            leaveMessage.setRoomId(ChatRooms.PUBLIC_ROOM);
+            leaveMessage.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)); // Set server-side timestamp
 
             // Send the leave message to the public topic.
             // This allows clients to update their online user lists.
-            messagingTemplate.convertAndSend("/topic/public", leaveMessage);
+            chatBroadcastService.announce(leaveMessage);
         }
     }
 }
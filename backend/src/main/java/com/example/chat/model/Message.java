@@ -7,15 +7,18 @@ package com.example.chat.model;
 
 import lombok.Data; // Import Lombok's Data annotation
 import org.springframework.data.annotation.Id; // Import Spring Data's Id annotation
+import org.springframework.data.mongodb.core.index.CompoundIndex; // For declaring multi-field indexes
 import org.springframework.data.mongodb.core.mapping.Document; // Import Document annotation for MongoDB mapping
 
 import java.time.LocalDateTime; // For timestamping messages
 
 @Data // Lombok annotation: automatically generates getters, setters, equals(), hashCode(), and toString() methods.
 @Document(collection = "messages") // Maps this Java class to a MongoDB collection named "messages".
+@CompoundIndex(name = "room_timestamp_id", def = "{'roomId': 1, 'timestamp': 1, '_id': 1}") // Serves per-room keyset pagination on (timestamp, id).
 public class Message {
     @Id // Marks this field as the primary key (identifier) for the MongoDB document.
     private String id;
+    private String roomId; // The chat room of the message ("public" for the main chat; missing on older messages).
     private String sender; // Stores the username of the message sender.
     private String content; // Stores the actual text content of the message.
     private LocalDateTime timestamp; // Stores the exact time the message was sent.
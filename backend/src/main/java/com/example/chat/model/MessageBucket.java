@@ -0,0 +1,44 @@
+package com.example.chat.model;
+
+import lombok.Data; // Generates getters, setters, equals(), hashCode() and toString()
+import org.springframework.data.annotation.Id; // Spring Data's Id annotation
+import org.springframework.data.mongodb.core.index.CompoundIndex; // For declaring multi-field indexes
+import org.springframework.data.mongodb.core.index.Indexed; // For declaring single-field indexes
+import org.springframework.data.mongodb.core.mapping.Document; // MongoDB document mapping
+
+import java.time.LocalDateTime; // Bucket window and message time range
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many messages of one room and one time window, stored as a single MongoDB document.
+ *
+ * New messages are appended to the current bucket of their room with an atomic $push upsert, so a busy room
+ * writes to a handful of documents per window instead of creating one document (and index entry) per message.
+ * A bucket holds a limited number of messages; once it is full, the next message of that window opens another
+ * bucket. Buckets stay in the hot collection for the hot window and are then moved to {@link #ARCHIVE_COLLECTION}
+ * (see MessageArchiver), where a TTL index eventually deletes them.
+ *
+ * The messages inside a bucket are kept in arrival order and carry no roomId of their own; readers sort them.
+ */
+@Data
+@Document(collection = MessageBucket.HOT_COLLECTION)
+@CompoundIndex(name = "room_start_count", def = "{'roomId': 1, 'start': 1, 'count': 1}") // Finds the open bucket to append to.
+@CompoundIndex(name = "room_last", def = "{'roomId': 1, 'last': -1}") // Newest-first history pages.
+@CompoundIndex(name = "room_first", def = "{'roomId': 1, 'first': 1}") // Oldest-first pages and the export.
+public class MessageBucket {
+
+    public static final String HOT_COLLECTION = "message_buckets";
+    public static final String ARCHIVE_COLLECTION = "message_buckets_archive";
+
+    @Id
+    private String id;
+    private String roomId; // The room all messages of the bucket belong to.
+    private LocalDateTime start; // Start of the time window the bucket belongs to.
+    private LocalDateTime first; // Timestamp of the oldest message in the bucket.
+    @Indexed // Finds the buckets that have left the hot window.
+    private LocalDateTime last; // Timestamp of the newest message in the bucket.
+    private int count; // Number of messages, kept in step with the array by $inc.
+    private List<Message> messages = new ArrayList<>();
+    private LocalDateTime archivedAt; // When the bucket was archived; the TTL index of the archive counts from here.
+}
@@ -0,0 +1,87 @@
+package com.example.chat.model;
+
+import java.nio.charset.StandardCharsets; // For encoding the cursor text as bytes
+import java.time.LocalDateTime; // Timestamp half of the cursor key
+import java.time.format.DateTimeParseException; // Thrown for malformed timestamps
+import java.util.Base64; // For the opaque, URL-safe cursor representation
+import java.util.Objects;
+
+/**
+ * Opaque keyset-pagination cursor pointing at a single message position in the history.
+ * The history is ordered by (timestamp, id), so a cursor simply captures both values of the
+ * boundary message. Clients receive cursors in response headers and pass them back unchanged
+ * as the "before" or "after" query parameter of GET /api/messages.
+ */
+public final class MessageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime timestamp;
+    private final String id;
+
+    public MessageCursor(LocalDateTime timestamp, String id) {
+        this.timestamp = Objects.requireNonNull(timestamp, "timestamp");
+        this.id = Objects.requireNonNull(id, "id");
+    }
+
+    /**
+     * Builds the cursor that points at the given message.
+     * @param message A message that has both a timestamp and an id.
+     * @return The cursor for that message's position.
+     */
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    /**
+     * Parses a cursor previously produced by {@link #encode()}.
+     * @param value The opaque cursor string received from a client.
+     * @return The decoded cursor.
+     * @throws IllegalArgumentException If the value is not a valid cursor.
+     */
+    public static MessageCursor decode(String value) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Malformed history cursor");
+            }
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed history cursor", e);
+        }
+    }
+
+    /**
+     * @return The URL-safe string form of this cursor.
+     */
+    public String encode() {
+        String raw = timestamp + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessageCursor other)) return false;
+        return timestamp.equals(other.timestamp) && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, id);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.chat.model;
 
 import lombok.Data; // Import Lombok's Data annotation
 import org.springframework.data.annotation.Id; // Import Spring Data's Id annotation
+import org.springframework.data.mongodb.core.index.Indexed; // For the unique index on username
 import org.springframework.data.mongodb.core.mapping.Document; // Import Document annotation for MongoDB mapping
 
 @Data // Lombok annotation: automatically generates getters, setters, equals(), hashCode(), and toString() methods.
@@ -9,10 +10,11 @@ import org.springframework.data.mongodb.core.mapping.Document; // Import Documen
 public class User {
     @Id // Marks this field as the primary key (identifier) for the MongoDB document.
     private String id;
+    @Indexed(unique = true) // Makes registration a single insert that MongoDB rejects for taken usernames.
     private String username; // Stores the unique username of the user.
-    private String password; // Stores the user's password.
-                            // WARNING: In a real application, you MUST hash and salt passwords
-                            //          before storing them. This is simplified for learning.
+    private String password; // Stores the BCrypt hash of the user's password (see PasswordHasher).
+                            // Accounts created before hashing may still hold plain text; it is
+                            // replaced by a hash on the user's next successful login.
 
     // Default constructor: Required by Spring Data MongoDB.
     public User() {}
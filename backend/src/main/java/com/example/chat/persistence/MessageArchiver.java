@@ -0,0 +1,125 @@
+package com.example.chat.persistence;
+
+import com.example.chat.model.MessageBucket; // Many messages of one room per document
+import io.micrometer.core.instrument.Counter; // For counting archived buckets
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import jakarta.annotation.PostConstruct; // For starting the schedule once settings are injected
+import jakarta.annotation.PreDestroy; // For stopping the schedule on shutdown
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.data.domain.Sort; // For archiving the oldest buckets first
+import org.springframework.data.mongodb.core.BulkOperations; // For batching the copies and deletes
+import org.springframework.data.mongodb.core.FindAndReplaceOptions; // For upserting into the archive
+import org.springframework.data.mongodb.core.MongoTemplate; // Lower-level MongoDB access
+import org.springframework.data.mongodb.core.query.Criteria; // For building query filters
+import org.springframework.data.mongodb.core.query.Query; // For building queries
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves message buckets that have left the hot window from the hot collection to the archive collection, where
+ * the TTL index created by MongoIndexInitializer deletes them once the retention period has passed.
+ *
+ * A bucket is copied first and deleted second, so it is never missing from both collections; readers that see it
+ * in both return its messages once. Copies are upserts by id and deletes only match a bucket that has not changed
+ * since it was copied, so the job can be interrupted at any point, and several nodes may run it at the same time.
+ */
+@Component
+public class MessageArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiver.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Buckets whose newest message is older than this stay in the hot collection no longer.
+    @Value("${chat.storage.hot-days:7}")
+    private int hotDays;
+
+    @Value("${chat.storage.archive.interval-ms:600000}")
+    private long intervalMillis;
+
+    // Buckets moved per round-trip.
+    @Value("${chat.storage.archive.batch-size:100}")
+    private int batchSize;
+
+    private ScheduledExecutorService scheduler;
+    private Counter archivedCounter;
+
+    @PostConstruct
+    void start() {
+        archivedCounter = Counter.builder("chat.storage.archived")
+                .description("Message buckets moved to the archive collection").register(meterRegistry);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runArchival, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void runArchival() {
+        try {
+            int archived = archiveOlderThan(LocalDateTime.now().minusDays(hotDays));
+            if (archived > 0) {
+                logger.info("Archived " + archived + " message buckets");
+            }
+        } catch (RuntimeException e) {
+            // A failed run must not cancel the schedule; the next run picks up where this one stopped.
+            logger.warn("Could not archive message buckets: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves every hot bucket whose newest message is older than the cutoff to the archive.
+     * @param cutoff The start of the hot window.
+     * @return The number of buckets moved.
+     */
+    int archiveOlderThan(LocalDateTime cutoff) {
+        Query expired = new Query(Criteria.where("last").lt(cutoff)).with(Sort.by("last")).limit(batchSize);
+        int archived = 0;
+        while (true) {
+            List<MessageBucket> buckets = mongoTemplate.find(expired, MessageBucket.class, MessageBucket.HOT_COLLECTION);
+            if (buckets.isEmpty()) {
+                return archived;
+            }
+            LocalDateTime archivedAt = LocalDateTime.now();
+            BulkOperations copies = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                    MessageBucket.class, MessageBucket.ARCHIVE_COLLECTION);
+            BulkOperations deletes = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                    MessageBucket.class, MessageBucket.HOT_COLLECTION);
+            for (MessageBucket bucket : buckets) {
+                bucket.setArchivedAt(archivedAt);
+                copies.replaceOne(byId(bucket), bucket, FindAndReplaceOptions.options().upsert());
+                // A message appended since the copy keeps the bucket in the hot collection until the next run.
+                deletes.remove(byId(bucket).addCriteria(Criteria.where("count").is(bucket.getCount())));
+            }
+            copies.execute();
+            int deleted = deletes.execute().getDeletedCount();
+            archivedCounter.increment(deleted);
+            archived += deleted;
+            if (deleted == 0) {
+                return archived; // Everything left is being written to; try again next run.
+            }
+        }
+    }
+
+    private static Query byId(MessageBucket bucket) {
+        return new Query(Criteria.where("id").is(bucket.getId()));
+    }
+}
@@ -0,0 +1,418 @@
+package com.example.chat.persistence;
+
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.repository.MessageRepository; // Stores messages in time buckets
+import com.fasterxml.jackson.core.JsonProcessingException; // A spilled line that is not a valid message
+import com.fasterxml.jackson.databind.ObjectMapper; // For the JSON-lines spill file
+import io.micrometer.core.instrument.Counter; // For counting message outcomes
+import io.micrometer.core.instrument.DistributionSummary; // For recording batch sizes
+import io.micrometer.core.instrument.Gauge; // For exposing the queue depth
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.Timer; // For recording flush latency
+import jakarta.annotation.PostConstruct; // For registering the meters once the registry is injected
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.context.SmartLifecycle; // For starting/stopping the flusher with the application
+import org.springframework.dao.DataAccessException; // Spring's database exception hierarchy
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for chat messages.
+ * ChatController broadcasts a message first and then hands it to this queue, so no MongoDB round-trip sits on
+ * the STOMP inbound thread. A single flusher thread drains the bounded queue and appends each batch to the time
+ * buckets of its rooms (MessageRepository#appendAll: one bulk write, one $push upsert per bucket), flushing as
+ * soon as either the batch size or the flush interval is reached. When the queue is full, the configured {@link OverflowPolicy} decides whether senders block,
+ * messages are dropped, or they are spilled to a local file that is replayed once the queue drains.
+ * Batches that MongoDB rejects are spilled as well, and the queue is fully flushed on shutdown.
+ * Spilled lines that cannot be read back (e.g. cut short by a crash) are moved to a ".rejected" file next to
+ * the spill file instead of blocking the replay of everything after them.
+ */
+@Component
+public class MessageWriteBehindQueue implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehindQueue.class);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired // Spring Boot's ObjectMapper, already configured for LocalDateTime.
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.persistence.write-behind.capacity:10000}")
+    private int capacity;
+
+    @Value("${chat.persistence.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.persistence.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.persistence.write-behind.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${chat.persistence.write-behind.block-timeout-ms:1000}")
+    private long blockTimeoutMs;
+
+    @Value("${chat.persistence.write-behind.spill-file:data/message-spill.jsonl}")
+    private String spillFile;
+
+    @Value("${chat.persistence.write-behind.spill-replay-interval-ms:5000}")
+    private long spillReplayIntervalMs;
+
+    @Value("${chat.persistence.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private final Object spillLock = new Object(); // Guards every access to the spill files.
+
+    private BlockingQueue<Message> queue;
+    private Thread flusher;
+    private volatile boolean running;
+    private long lastSpillReplay;
+
+    private Timer flushTimer;
+    private DistributionSummary batchSizes;
+    private Counter persistedCounter;
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+    private Counter rejectedCounter;
+
+    /**
+     * Hands a message over for asynchronous persistence.
+     * Called on the STOMP inbound thread right after the message has been broadcast.
+     * @param message The message to persist; it must already carry its final id and timestamp.
+     * @return true if the message was queued or spilled, false if it was dropped.
+     */
+    public boolean enqueue(Message message) {
+        if (!running) {
+            // Late arrivals during shutdown are written directly so they are not lost.
+            persist(List.of(message));
+            return true;
+        }
+        if (queue.offer(message)) {
+            return queued();
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(message, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return queued();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case SPILL:
+                if (spill(List.of(message))) {
+                    return true;
+                }
+                break;
+            case DROP:
+            default:
+                break;
+        }
+
+        droppedCounter.increment();
+        logger.warn("Write-behind queue is full, dropped message " + message.getId());
+        return false;
+    }
+
+    // Shutdown may have begun after the running check in enqueue(), and the flusher and stop() may already have
+    // taken their last look at the queue; in that case the message is written from here.
+    private boolean queued() {
+        if (!running) {
+            persistRemaining();
+        }
+        return true;
+    }
+
+    private void persistRemaining() {
+        List<Message> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        persist(remaining); // Spills what MongoDB doesn't take.
+    }
+
+    /**
+     * @return The number of messages currently waiting to be flushed.
+     */
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    // Registered before any other bean can call enqueue(), which may persist directly before start().
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("chat.persistence.queue.depth", this, MessageWriteBehindQueue::getQueueDepth)
+                .description("Messages waiting in the write-behind queue")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.persistence.flush.latency")
+                .description("Time taken to write one batch of messages to MongoDB")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("chat.persistence.flush.batch.size")
+                .description("Messages written per flush")
+                .register(meterRegistry);
+        persistedCounter = outcomeCounter("persisted");
+        droppedCounter = outcomeCounter("dropped");
+        spilledCounter = outcomeCounter("spilled");
+        rejectedCounter = outcomeCounter("rejected");
+    }
+
+    @Override
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        flusher = new Thread(this::runFlusher, "message-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false; // The flusher drains whatever is left in the queue and then exits.
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            logger.warn("Write-behind flusher did not finish within " + shutdownTimeoutMs + " ms, spilling the rest");
+            List<Message> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            spill(remaining);
+        } else {
+            // Offered after the flusher saw an empty queue and exited.
+            persistRemaining();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stop after the WebSocket handlers and broker (phase Integer.MAX_VALUE), so no new messages arrive
+        // while the final flush is running.
+        return Integer.MAX_VALUE - 1000;
+    }
+
+    private void runFlusher() {
+        replaySpillFile(); // Pick up anything spilled before the last shutdown or crash.
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // Idle: a good moment to move spilled messages into MongoDB.
+                    if (System.currentTimeMillis() - lastSpillReplay >= spillReplayIntervalMs) {
+                        replaySpillFile();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in write-behind flusher", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        replaySpillFile();
+    }
+
+    // Keeps collecting messages until the batch is full or the flush interval since the first message has passed.
+    private void fillBatch(List<Message> batch, long deadline) throws InterruptedException {
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes one batch to the message buckets. Messages that fail are spilled so they can be retried later.
+     * A replayed message that had been stored after all is stored twice; history reads return it once.
+     * @return true if every message of the batch is now stored in MongoDB.
+     */
+    private boolean persist(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Message> failed = messageRepository.appendAll(batch);
+            persistedCounter.increment(batch.size() - failed.size());
+            if (!failed.isEmpty()) {
+                logger.warn("MongoDB rejected " + failed.size() + " messages, spilling them");
+                spill(failed);
+            }
+            return failed.isEmpty();
+        } catch (DataAccessException e) {
+            logger.warn("Could not write " + batch.size() + " messages to MongoDB, spilling them: " + e.getMessage());
+            spill(batch);
+            return false;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        }
+    }
+
+    /**
+     * Appends messages to the spill file as JSON lines.
+     * @return true if the messages were written to disk.
+     */
+    private boolean spill(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        synchronized (spillLock) {
+            Path path = Paths.get(spillFile);
+            try {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                terminateLastLine(path);
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (Message message : messages) {
+                        writer.write(objectMapper.writeValueAsString(message));
+                        writer.newLine();
+                    }
+                }
+                spilledCounter.increment(messages.size());
+                return true;
+            } catch (IOException e) {
+                logger.error("Could not spill " + messages.size() + " messages to " + path, e);
+                return false;
+            }
+        }
+    }
+
+    // A crash in the middle of an append can leave a line without its newline; the next message must not be
+    // glued onto it, or a good message would be rejected together with the cut-off one.
+    private static void terminateLastLine(Path path) throws IOException {
+        if (Files.notExists(path) || Files.size(path) == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            if (file.read() != '\n') {
+                file.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Moves spilled messages back into MongoDB in batches. The spill file is renamed before it is read, so
+     * messages spilled concurrently go to a fresh file; a leftover ".replaying" file from a crash is replayed first.
+     */
+    private void replaySpillFile() {
+        lastSpillReplay = System.currentTimeMillis();
+        Path path = Paths.get(spillFile);
+        Path replaying = Paths.get(spillFile + ".replaying");
+        synchronized (spillLock) {
+            try {
+                if (Files.notExists(replaying)) {
+                    if (Files.notExists(path)) {
+                        return;
+                    }
+                    Files.move(path, replaying, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                logger.error("Could not prepare spill file " + path + " for replay", e);
+                return;
+            }
+        }
+
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+            List<Message> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(objectMapper.readValue(line, Message.class));
+                } catch (JsonProcessingException e) {
+                    reject(line, e);
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    persist(batch); // Failures are spilled again to the fresh spill file.
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            persist(batch);
+            replayed += batch.size();
+        } catch (IOException e) {
+            logger.error("Could not read spill file " + replaying + ", leaving it for the next attempt", e);
+            return;
+        }
+
+        try {
+            Files.delete(replaying);
+        } catch (IOException e) {
+            logger.error("Could not delete replayed spill file " + replaying, e);
+        }
+        logger.info("Replayed " + replayed + " spilled messages into MongoDB");
+    }
+
+    // Keeps an unreadable spill line for inspection, so it is neither lost silently nor retried forever.
+    private void reject(String line, JsonProcessingException cause) {
+        rejectedCounter.increment();
+        Path rejected = Paths.get(spillFile + ".rejected");
+        logger.error("Skipping unreadable spilled message, moving it to " + rejected + ": " + cause.getOriginalMessage());
+        synchronized (spillLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(rejected, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+                writer.newLine();
+            } catch (IOException e) {
+                logger.error("Could not write rejected spill line to " + rejected, e);
+            }
+        }
+    }
+
+    private Counter outcomeCounter(String outcome) {
+        return Counter.builder("chat.persistence.messages")
+                .description("Messages handled by the write-behind queue, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.chat.persistence;
+
+/**
+ * What {@link MessageWriteBehindQueue} does with a new message when its in-memory queue is full.
+ * Selected with the chat.persistence.write-behind.overflow-policy property.
+ */
+public enum OverflowPolicy {
+
+    /** Wait (up to the configured block timeout) for room in the queue, then drop the message. */
+    BLOCK,
+
+    /** Drop the message immediately. Lowest latency, but the message is never persisted. */
+    DROP,
+
+    /** Append the message to the local spill file; it is written to MongoDB once the queue has drained. */
+    SPILL
+}
@@ -0,0 +1,76 @@
+package com.example.chat.presence;
+
+import io.micrometer.core.instrument.Counter; // For counting published updates
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import jakarta.annotation.PostConstruct; // For starting the tick once settings are injected
+import jakarta.annotation.PreDestroy; // For stopping the tick on shutdown
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.messaging.simp.SimpMessageSendingOperations; // For sending to the broker
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the changes collected by the {@link PresenceRegistry} to "/topic/presence" at a fixed tick,
+ * at most one {@link PresenceUpdate} per tick no matter how many sessions joined or closed in between.
+ *
+ * Presence is per node: with several nodes (chat.cluster.enabled), each node's clients see the users connected
+ * to that node.
+ */
+@Component
+public class PresenceBroadcaster {
+
+    public static final String PRESENCE_TOPIC = "/topic/presence";
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceBroadcaster.class);
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired // Sends to the broker channel, from where RoomFanoutBroker delivers to subscribers.
+    private SimpMessageSendingOperations messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.presence.tick-ms:250}")
+    private long tickMillis;
+
+    private ScheduledExecutorService ticker;
+    private Counter updateCounter;
+
+    @PostConstruct
+    void start() {
+        updateCounter = Counter.builder("chat.presence.updates")
+                .description("Presence updates published to " + PRESENCE_TOPIC).register(meterRegistry);
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presence-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::publishChanges, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    void publishChanges() {
+        try {
+            PresenceUpdate update = presenceRegistry.drainChanges();
+            if (update != null) {
+                messagingTemplate.convertAndSend(PRESENCE_TOPIC, update);
+                updateCounter.increment();
+            }
+        } catch (RuntimeException e) {
+            // A failed tick must not cancel the schedule; the next snapshot fetch repairs any client.
+            logger.warn("Could not publish presence update: " + e.getMessage());
+        }
+    }
+}
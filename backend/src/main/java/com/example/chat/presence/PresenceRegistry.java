@@ -0,0 +1,152 @@
+package com.example.chat.presence;
+
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is online on this node, keyed by username. A user stays online as long as at least one of their STOMP
+ * sessions (e.g. one per browser tab) is open.
+ *
+ * Sessions are added and removed as they join and close, which can happen thousands of times per second during
+ * a reconnect storm. Rather than telling every client about each of those, changes are only marked, and
+ * {@link #drainChanges()} turns everything marked since the previous call into one {@link PresenceUpdate}.
+ * A user who leaves and comes back within the same tick doesn't show up in it at all.
+ *
+ * A session's join can arrive after it closed: a client that sends chat.addUser and then drops leaves the frame
+ * queued on the inbound pool while the disconnect event is handled. Closed session ids are therefore remembered
+ * for a while, and a join for one of them is ignored.
+ */
+@Component
+public class PresenceRegistry {
+
+    // username -> its open session ids. The sets are only modified inside compute() on their own entry.
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, String> userBySession = new ConcurrentHashMap<>();
+    // Users whose online state may have changed since the last drainChanges().
+    private final Set<String> changedUsers = ConcurrentHashMap.newKeySet();
+    // Recently closed session ids -> when they closed (System.nanoTime()); pruned by drainChanges().
+    private final Map<String, Long> closedSessions = new ConcurrentHashMap<>();
+    private static final long CLOSED_SESSION_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // The online users as of the last published update, and its sequence number. Guarded by this.
+    private final Set<String> announced = new HashSet<>();
+    private long sequence;
+
+    /**
+     * Records that a session joined as the given user.
+     * @param sessionId The STOMP session id.
+     * @param username The user the session belongs to.
+     * @return True if this is the user's first open session, i.e. the user just came online. False as well if
+     *         the session has already closed.
+     */
+    public boolean sessionJoined(String sessionId, String username) {
+        if (closedSessions.containsKey(sessionId)) {
+            return false; // The join was still queued when the session closed.
+        }
+        String previous = userBySession.put(sessionId, username);
+        if (username.equals(previous)) {
+            return false; // The same session joined twice.
+        }
+        if (previous != null) {
+            removeSession(previous, sessionId); // The session switched users.
+        }
+        boolean[] first = {false};
+        sessionsByUser.compute(username, (user, sessions) -> {
+            Set<String> result = sessions != null ? sessions : new HashSet<>();
+            first[0] = result.isEmpty();
+            result.add(sessionId);
+            return result;
+        });
+        changedUsers.add(username); // Marked after the change, so the next drain is sure to see it.
+        if (closedSessions.containsKey(sessionId)) {
+            // Closed while joining: sessionClosed() may have run before the session was added. Undo the join.
+            if (userBySession.remove(sessionId, username)) {
+                removeSession(username, sessionId);
+            }
+            return false;
+        }
+        return first[0];
+    }
+
+    /**
+     * Records that a session closed. Unknown sessions (ones that never joined) are ignored.
+     * @param sessionId The STOMP session id.
+     * @return The username if this was the user's last open session, i.e. the user just went offline;
+     *         otherwise null.
+     */
+    public String sessionClosed(String sessionId) {
+        closedSessions.put(sessionId, System.nanoTime()); // Before the removal, see sessionJoined().
+        String username = userBySession.remove(sessionId);
+        if (username == null) {
+            return null;
+        }
+        return removeSession(username, sessionId) ? username : null;
+    }
+
+    // Returns true if the user has no sessions left.
+    private boolean removeSession(String username, String sessionId) {
+        boolean[] last = {false};
+        sessionsByUser.computeIfPresent(username, (user, sessions) -> {
+            sessions.remove(sessionId);
+            last[0] = sessions.isEmpty();
+            return last[0] ? null : sessions;
+        });
+        changedUsers.add(username);
+        return last[0];
+    }
+
+    /**
+     * @param username A username.
+     * @return Whether the user has at least one open session on this node.
+     */
+    public boolean isOnline(String username) {
+        return sessionsByUser.containsKey(username);
+    }
+
+    /**
+     * Collects the net changes since the previous call into one update.
+     * @return The update to publish, or null if nobody's online state changed.
+     */
+    public synchronized PresenceUpdate drainChanges() {
+        long now = System.nanoTime();
+        closedSessions.values().removeIf(closedAt -> now - closedAt > CLOSED_SESSION_RETENTION_NANOS);
+
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        for (Iterator<String> users = changedUsers.iterator(); users.hasNext(); ) {
+            String username = users.next();
+            users.remove();
+            if (isOnline(username)) {
+                if (announced.add(username)) {
+                    joined.add(username);
+                }
+            } else if (announced.remove(username)) {
+                left.add(username);
+            }
+        }
+        if (joined.isEmpty() && left.isEmpty()) {
+            return null;
+        }
+        joined.sort(null);
+        left.sort(null);
+        return new PresenceUpdate(++sequence, joined, left);
+    }
+
+    /**
+     * @return The online users as of the latest update returned by {@link #drainChanges()}, so that applying
+     *         later updates on top of it is consistent.
+     */
+    public synchronized PresenceSnapshot snapshot() {
+        List<String> online = new ArrayList<>(announced);
+        online.sort(null);
+        return new PresenceSnapshot(sequence, online);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.chat.presence;
+
+import lombok.Data; // Lombok annotation: getters, setters, equals(), hashCode() and toString()
+
+import java.util.List;
+
+/**
+ * Everyone online on this node, as of the presence update with the given sequence number.
+ */
+@Data
+public class PresenceSnapshot {
+    private long sequence; // Updates up to and including this one are reflected in online.
+    private List<String> online; // Usernames, sorted.
+
+    public PresenceSnapshot() {
+    }
+
+    public PresenceSnapshot(long sequence, List<String> online) {
+        this.sequence = sequence;
+        this.online = online;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.chat.presence;
+
+import lombok.Data; // Lombok annotation: getters, setters, equals(), hashCode() and toString()
+
+import java.util.List;
+
+/**
+ * Who came online and who went offline since the previous update, as published to /topic/presence.
+ * Clients apply updates in sequence order on top of a snapshot from GET /api/presence; a skipped sequence number
+ * means an update was missed and the snapshot should be fetched again.
+ */
+@Data
+public class PresenceUpdate {
+    private long sequence; // Increases by one per update; a snapshot with this sequence already includes it.
+    private List<String> joined; // Usernames that came online.
+    private List<String> left; // Usernames whose last session closed.
+
+    public PresenceUpdate() {
+    }
+
+    public PresenceUpdate(long sequence, List<String> joined, List<String> left) {
+        this.sequence = sequence;
+        this.joined = joined;
+        this.left = left;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageBucket; // Many messages of one room per document
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazily merges sorted message sources into one history ordered by (timestamp, id).
+ *
+ * The history of a room is spread over several sources: buckets in the hot and the archive collection, and
+ * single-message documents written before bucketing. Each source is read in order with its own cursor, and only
+ * as far as the merged result needs, so a page of 50 messages reads a bucket or two per source.
+ */
+final class HistoryMerge {
+
+    static final Comparator<Message> OLDEST_FIRST =
+            Comparator.comparing(Message::getTimestamp).thenComparing(Message::getId);
+    static final Comparator<Message> NEWEST_FIRST = OLDEST_FIRST.reversed();
+
+    private HistoryMerge() {
+    }
+
+    /**
+     * @return Negative, zero or positive as the message lies before, at or after the cursor position.
+     */
+    static int compareToCursor(Message message, MessageCursor cursor) {
+        int byTime = message.getTimestamp().compareTo(cursor.getTimestamp());
+        return byTime != 0 ? byTime : message.getId().compareTo(cursor.getId());
+    }
+
+    /**
+     * Turns buckets into their messages, in order. Buckets may overlap in time (a full bucket and its successor
+     * in the same window, or concurrent writers), so a message is only released once no later bucket can hold an
+     * earlier one.
+     * @param buckets Buckets sorted by 'first' ascending (oldest-first) or by 'last' descending (newest-first).
+     * @param newestFirst The direction of both the buckets and the result.
+     */
+    static Iterator<Message> unwind(Iterator<MessageBucket> buckets, boolean newestFirst) {
+        Comparator<Message> order = newestFirst ? NEWEST_FIRST : OLDEST_FIRST;
+        PriorityQueue<Message> pending = new PriorityQueue<>(order);
+        return new Iterator<>() {
+            private MessageBucket next = buckets.hasNext() ? buckets.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                while (next != null && (pending.isEmpty() || mayPrecede(next, pending.peek()))) {
+                    for (Message message : next.getMessages()) {
+                        message.setRoomId(next.getRoomId());
+                        pending.add(message);
+                    }
+                    next = buckets.hasNext() ? buckets.next() : null;
+                }
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return pending.poll();
+            }
+
+            // Could the bucket hold a message that comes before (or ties with) the given one?
+            private boolean mayPrecede(MessageBucket bucket, Message message) {
+                return newestFirst
+                        ? !bucket.getLast().isBefore(message.getTimestamp())
+                        : !bucket.getFirst().isAfter(message.getTimestamp());
+            }
+        };
+    }
+
+    /**
+     * Merges sources that are each sorted in the given order. A message found in several sources (while a
+     * bucket is being archived, or after a write was retried) is returned once.
+     */
+    static Iterator<Message> merge(List<Iterator<Message>> sources, Comparator<Message> order) {
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> order.compare(a.message, b.message));
+        for (Iterator<Message> source : sources) {
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), source));
+            }
+        }
+        return new Iterator<>() {
+            private String lastId;
+
+            @Override
+            public boolean hasNext() {
+                // Equal messages sort next to each other, so comparing with the last returned id is enough.
+                while (!heads.isEmpty() && heads.peek().message.getId().equals(lastId)) {
+                    advance();
+                }
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Message message = advance();
+                lastId = message.getId();
+                return message;
+            }
+
+            private Message advance() {
+                Head head = heads.poll();
+                if (head.source.hasNext()) {
+                    heads.add(new Head(head.source.next(), head.source));
+                }
+                return head.message;
+            }
+        };
+    }
+
+    /**
+     * @return Up to limit messages of the iterator.
+     */
+    static List<Message> take(Iterator<Message> messages, int limit) {
+        List<Message> taken = new ArrayList<>(Math.min(limit, 1024));
+        while (taken.size() < limit && messages.hasNext()) {
+            taken.add(messages.next());
+        }
+        return taken;
+    }
+
+    private record Head(Message message, Iterator<Message> source) {
+    }
+}
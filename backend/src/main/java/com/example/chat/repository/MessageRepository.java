@@ -6,18 +6,11 @@
 package com.example.chat.repository;
 
 import com.example.chat.model.Message; // Import the Message model
-import org.springframework.data.mongodb.repository.MongoRepository; // Import MongoRepository
-import org.springframework.stereotype.Repository; // Import Repository annotation
+import org.springframework.data.repository.Repository; // Marker interface: a repository without inherited CRUD methods
 
-import java.util.List; // For returning lists of messages
-
-@Repository // Marks this interface as a Spring Data repository, allowing Spring to find and manage it.
-public interface MessageRepository extends MongoRepository<Message, String> {
-    // MongoRepository provides standard CRUD (Create, Read, Update, Delete) operations
-    // for Message documents with String as their ID type (based on the @Id field in Message.java).
-    // Examples of methods it provides: save(), findById(), findAll(), delete().
-
-    // Custom query method: Spring Data can automatically generate queries
-    // based on method names. This method fetches all messages and orders them by timestamp in ascending order.
-    List<Message> findAllByOrderByTimestampAsc();
+// Spring Data finds this interface through the Repository marker, so it needs no @Repository annotation.
+public interface MessageRepository extends Repository<Message, String>, MessageRepositoryCustom {
+    // Deliberately not a MongoRepository: its inherited save(), findById(), findAll(), count() and delete() would
+    // only see the legacy one-document-per-message collection, while messages are now stored in time buckets.
+    // Every read and write goes through MessageRepositoryCustom, which knows about the buckets and the archive.
 }
\ No newline at end of file
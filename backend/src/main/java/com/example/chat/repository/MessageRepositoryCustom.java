@@ -0,0 +1,52 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+
+import java.time.LocalDateTime; // For time-bounded bulk reads
+import java.util.List; // For returning pages of messages
+import java.util.stream.Stream; // For cursor-backed streaming reads
+
+/**
+ * Custom query methods for {@link MessageRepository} that Spring Data cannot derive from method names.
+ * Spring Data picks up the implementation automatically from {@link MessageRepositoryCustomImpl}.
+ */
+public interface MessageRepositoryCustom {
+
+    /**
+     * Loads one page of history using keyset pagination on (timestamp, id).
+     * At most one of {@code before} and {@code after} may be given; with neither, the newest page is returned.
+     * @param roomId The room whose history is read.
+     * @param before Only return messages strictly older than this position (may be null).
+     * @param after Only return messages strictly newer than this position (may be null).
+     * @param limit Maximum number of messages to return.
+     * @return The page, always ordered oldest-first.
+     */
+    List<Message> findPage(String roomId, MessageCursor before, MessageCursor after, int limit);
+
+    /**
+     * Streams the complete history of a room oldest-first straight from a MongoDB cursor.
+     * The caller MUST close the returned stream so the server-side cursor is released.
+     * @param roomId The room whose history is read.
+     * @return A lazily populated stream of every message.
+     */
+    Stream<Message> streamAllOrdered(String roomId);
+
+    /**
+     * Streams every stored message of every room, in no particular order, for bulk readers such as the search
+     * index rebuild. Each storage tier is returned as its own stream so the tiers can be read in parallel.
+     * The caller MUST close every returned stream so the server-side cursors are released.
+     * @param since Only return messages at or after this time (may be null for all messages). Legacy
+     *              single-message documents are only read when it is null, since nothing is written to them anymore.
+     * @return One lazily populated stream per storage tier; every message carries its roomId.
+     */
+    List<Stream<Message>> streamAllByTier(LocalDateTime since);
+
+    /**
+     * Stores messages in the time buckets of their rooms.
+     * @param messages The messages, each with its final id, room and timestamp.
+     * @return The messages MongoDB rejected, to be retried later; empty if all were stored.
+     * @throws org.springframework.dao.DataAccessException If MongoDB could not be reached.
+     */
+    List<Message> appendAll(List<Message> messages);
+}
@@ -0,0 +1,279 @@
+package com.example.chat.repository;
+
+import com.example.chat.broker.ChatRooms; // Room naming rules
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageBucket; // Many messages of one room per document
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+import com.mongodb.bulk.BulkWriteError; // Per-operation failure inside a bulk write
+import org.bson.Document; // Raw BSON document
+import org.bson.types.ObjectId; // Native MongoDB id type
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.data.domain.Sort; // For ordering query results
+import org.springframework.data.mongodb.BulkOperationException; // Thrown when some operations of a bulk write fail
+import org.springframework.data.mongodb.core.BulkOperations; // For batching the bucket upserts
+import org.springframework.data.mongodb.core.MongoTemplate; // Lower-level MongoDB access
+import org.springframework.data.mongodb.core.query.Criteria; // For building query filters
+import org.springframework.data.mongodb.core.query.Query; // For building queries
+import org.springframework.data.mongodb.core.query.Update; // For the $push upserts
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * MongoTemplate-backed implementation of {@link MessageRepositoryCustom}.
+ *
+ * Messages are stored in time buckets ({@link MessageBucket}): the hot collection holds the recent buckets of
+ * every room, the archive collection the older ones, and the original "messages" collection (one document per
+ * message) is still read for history written before bucketing. Reads query every tier with its own index and
+ * merge the results, so callers see one history ordered by (timestamp, id).
+ */
+public class MessageRepositoryCustomImpl implements MessageRepositoryCustom {
+
+    private static final Sort ASCENDING = Sort.by(Sort.Order.asc("timestamp"), Sort.Order.asc("id"));
+    private static final Sort DESCENDING = Sort.by(Sort.Order.desc("timestamp"), Sort.Order.desc("id"));
+    private static final Sort BUCKETS_OLDEST_FIRST = Sort.by(Sort.Order.asc("first"));
+    private static final Sort BUCKETS_NEWEST_FIRST = Sort.by(Sort.Order.desc("last"));
+    private static final List<String> BUCKET_COLLECTIONS =
+            List.of(MessageBucket.HOT_COLLECTION, MessageBucket.ARCHIVE_COLLECTION);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // How many documents the driver pulls per round-trip while streaming.
+    @Value("${chat.history.stream-batch-size:500}")
+    private int streamBatchSize;
+
+    // Length of a bucket's time window; should divide a day evenly.
+    @Value("${chat.storage.bucket-minutes:60}")
+    private int bucketMinutes;
+
+    // Messages per bucket document; a full bucket is followed by another one for the same window.
+    @Value("${chat.storage.bucket-max-messages:200}")
+    private int bucketMaxMessages;
+
+    // Also read the single-message documents written before bucketing.
+    @Value("${chat.storage.legacy-reads:true}")
+    private boolean legacyReads;
+
+    @Override
+    public List<Message> findPage(String roomId, MessageCursor before, MessageCursor after, int limit) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of 'before' and 'after' may be given");
+        }
+
+        // Walk forward from the 'after' cursor, or backward from the 'before' cursor (or the newest message).
+        boolean newestFirst = after == null;
+        List<Stream<Message>> tiers = new ArrayList<>();
+        try {
+            for (String collection : BUCKET_COLLECTIONS) {
+                tiers.add(bucketedMessages(collection, roomId, before, after, newestFirst, limit));
+            }
+            if (legacyReads) {
+                tiers.add(legacyMessages(roomId, before, after, newestFirst, limit));
+            }
+            List<Message> page = HistoryMerge.take(merge(tiers, newestFirst), limit);
+            if (newestFirst) {
+                Collections.reverse(page); // Pages are always returned oldest-first.
+            }
+            return page;
+        } finally {
+            tiers.forEach(Stream::close);
+        }
+    }
+
+    @Override
+    public Stream<Message> streamAllOrdered(String roomId) {
+        List<Stream<Message>> tiers = new ArrayList<>();
+        for (String collection : BUCKET_COLLECTIONS) {
+            tiers.add(bucketedMessages(collection, roomId, null, null, false, streamBatchSize));
+        }
+        if (legacyReads) {
+            tiers.add(mongoTemplate.stream(new Query(inRoom(roomId)).with(ASCENDING).cursorBatchSize(streamBatchSize),
+                    Message.class));
+        }
+        Stream<Message> merged = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merge(tiers, false), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return merged.onClose(() -> tiers.forEach(Stream::close));
+    }
+
+    @Override
+    public List<Stream<Message>> streamAllByTier(LocalDateTime since) {
+        List<Stream<Message>> tiers = new ArrayList<>();
+        for (String collection : BUCKET_COLLECTIONS) {
+            // Buckets in natural order: no sort, so a full read is a plain collection scan.
+            Query query = new Query(since != null ? Criteria.where("last").gte(since) : new Criteria())
+                    .cursorBatchSize(Math.max(1, streamBatchSize / bucketMaxMessages));
+            Stream<MessageBucket> buckets = mongoTemplate.stream(query, MessageBucket.class, collection);
+            Stream<Message> messages = buckets.flatMap(bucket -> {
+                bucket.getMessages().forEach(message -> message.setRoomId(bucket.getRoomId()));
+                return bucket.getMessages().stream();
+            });
+            if (since != null) {
+                messages = messages.filter(message -> !message.getTimestamp().isBefore(since));
+            }
+            tiers.add(messages.onClose(buckets::close));
+        }
+        if (legacyReads && since == null) {
+            Stream<Message> legacy = mongoTemplate.stream(new Query().cursorBatchSize(streamBatchSize), Message.class);
+            tiers.add(legacy.map(message -> {
+                if (message.getRoomId() == null) {
+                    message.setRoomId(ChatRooms.PUBLIC_ROOM); // Stored before rooms existed.
+                }
+                return message;
+            }));
+        }
+        return tiers;
+    }
+
+    /**
+     * Appends messages to the current bucket of their room and time window with one $push upsert per bucket,
+     * sent to MongoDB as a single unordered bulk write.
+     */
+    @Override
+    public List<Message> appendAll(List<Message> messages) {
+        // Group by (room, window), keeping the arrival order within each group.
+        Map<List<Object>, List<Message>> byBucket = new LinkedHashMap<>();
+        for (Message message : messages) {
+            String roomId = message.getRoomId() != null ? message.getRoomId() : ChatRooms.PUBLIC_ROOM;
+            byBucket.computeIfAbsent(List.of(roomId, windowStart(message.getTimestamp())), key -> new ArrayList<>())
+                    .add(message);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MessageBucket.class);
+        List<List<Message>> operations = new ArrayList<>(); // Messages per bulk operation, by operation index.
+        byBucket.forEach((key, group) -> {
+            for (int from = 0; from < group.size(); from += bucketMaxMessages) {
+                List<Message> chunk = group.subList(from, Math.min(group.size(), from + bucketMaxMessages));
+                bulk.upsert(openBucket((String) key.get(0), (LocalDateTime) key.get(1), chunk.size()), append(chunk));
+                operations.add(chunk);
+            }
+        });
+
+        try {
+            bulk.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            List<Message> failed = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failed.addAll(operations.get(error.getIndex()));
+            }
+            return failed;
+        }
+    }
+
+    // A bucket of the room and window with space for the given number of messages. When there is none, the
+    // upsert creates one with the roomId and start of this filter.
+    private Query openBucket(String roomId, LocalDateTime start, int size) {
+        return new Query(Criteria.where("roomId").is(roomId).and("start").is(start)
+                .and("count").lte(bucketMaxMessages - size));
+    }
+
+    private Update append(List<Message> chunk) {
+        List<Document> documents = new ArrayList<>(chunk.size());
+        LocalDateTime first = chunk.get(0).getTimestamp();
+        LocalDateTime last = first;
+        for (Message message : chunk) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(message, document);
+            document.remove("_class");
+            document.remove("roomId"); // Stored once on the bucket.
+            documents.add(document);
+            first = message.getTimestamp().isBefore(first) ? message.getTimestamp() : first;
+            last = message.getTimestamp().isAfter(last) ? message.getTimestamp() : last;
+        }
+        return new Update()
+                .push("messages").each(documents.toArray())
+                .inc("count", chunk.size())
+                .min("first", first)
+                .max("last", last);
+    }
+
+    // Start of the bucket window the timestamp falls into.
+    private LocalDateTime windowStart(LocalDateTime timestamp) {
+        int minuteOfDay = timestamp.getHour() * 60 + timestamp.getMinute();
+        return timestamp.toLocalDate().atStartOfDay().plusMinutes(minuteOfDay - minuteOfDay % bucketMinutes);
+    }
+
+    // The messages of one bucket collection in history order, restricted to the cursor.
+    private Stream<Message> bucketedMessages(String collection, String roomId, MessageCursor before,
+                                             MessageCursor after, boolean newestFirst, int limit) {
+        Criteria criteria = Criteria.where("roomId").is(roomId);
+        if (before != null) {
+            criteria = criteria.and("first").lte(before.getTimestamp());
+        }
+        if (after != null) {
+            criteria = criteria.and("last").gte(after.getTimestamp());
+        }
+        // Buckets are large; fetch just enough of them per round-trip to fill the page.
+        int batchSize = Math.max(2, limit / bucketMaxMessages + 1);
+        Query query = new Query(criteria).with(newestFirst ? BUCKETS_NEWEST_FIRST : BUCKETS_OLDEST_FIRST)
+                .cursorBatchSize(batchSize);
+        Stream<MessageBucket> buckets = mongoTemplate.stream(query, MessageBucket.class, collection);
+        Iterator<Message> messages = HistoryMerge.unwind(buckets.iterator(), newestFirst);
+        Stream<Message> stream = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(messages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        if (before != null) {
+            stream = stream.filter(message -> HistoryMerge.compareToCursor(message, before) < 0);
+        }
+        if (after != null) {
+            stream = stream.filter(message -> HistoryMerge.compareToCursor(message, after) > 0);
+        }
+        return stream.onClose(buckets::close);
+    }
+
+    // The single-message documents of the legacy collection, restricted to the cursor and the page size.
+    private Stream<Message> legacyMessages(String roomId, MessageCursor before, MessageCursor after,
+                                           boolean newestFirst, int limit) {
+        Criteria criteria = inRoom(roomId);
+        if (before != null) {
+            criteria = new Criteria().andOperator(criteria, olderThan(before));
+        }
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, newerThan(after));
+        }
+        Query query = new Query(criteria).with(newestFirst ? DESCENDING : ASCENDING).limit(limit);
+        return mongoTemplate.stream(query, Message.class);
+    }
+
+    private static Iterator<Message> merge(List<Stream<Message>> tiers, boolean newestFirst) {
+        List<Iterator<Message>> sources = new ArrayList<>(tiers.size());
+        tiers.forEach(tier -> sources.add(tier.iterator()));
+        return HistoryMerge.merge(sources, newestFirst ? HistoryMerge.NEWEST_FIRST : HistoryMerge.OLDEST_FIRST);
+    }
+
+    // Messages stored before rooms existed have no roomId and belong to the public room.
+    private static Criteria inRoom(String roomId) {
+        return ChatRooms.PUBLIC_ROOM.equals(roomId)
+                ? Criteria.where("roomId").in(ChatRooms.PUBLIC_ROOM, null)
+                : Criteria.where("roomId").is(roomId);
+    }
+
+    // (timestamp, id) < cursor, expressed so MongoDB can use the compound index bounds.
+    private static Criteria olderThan(MessageCursor cursor) {
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").lt(cursor.getTimestamp()),
+                Criteria.where("timestamp").is(cursor.getTimestamp()).and("id").lt(idValue(cursor)));
+    }
+
+    // (timestamp, id) > cursor
+    private static Criteria newerThan(MessageCursor cursor) {
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").gt(cursor.getTimestamp()),
+                Criteria.where("timestamp").is(cursor.getTimestamp()).and("id").gt(idValue(cursor)));
+    }
+
+    // Range operators on _id are not converted by Spring Data, so compare against the stored ObjectId ourselves.
+    private static Object idValue(MessageCursor cursor) {
+        return ObjectId.isValid(cursor.getId()) ? new ObjectId(cursor.getId()) : cursor.getId();
+    }
+}
@@ -0,0 +1,513 @@
+package com.example.chat.search;
+
+import com.example.chat.broker.ChatRooms; // Room naming rules
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.repository.MessageRepository; // Source of the bulk (re)load
+import io.micrometer.core.instrument.Counter; // For counting indexed and dropped messages
+import io.micrometer.core.instrument.Gauge; // For exposing the queue depth and index size
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.Timer; // For recording search latency
+import org.apache.lucene.analysis.Analyzer; // Splits message text into terms
+import org.apache.lucene.analysis.standard.StandardAnalyzer; // Unicode word splitting and lower-casing
+import org.apache.lucene.document.Document; // One indexed message
+import org.apache.lucene.document.Field; // For the stored flag of fields
+import org.apache.lucene.document.LongPoint; // For time-range filters
+import org.apache.lucene.document.NumericDocValuesField; // For sorting by time
+import org.apache.lucene.document.StoredField; // For values returned with a hit
+import org.apache.lucene.document.StringField; // For exact-match keywords (id, room, sender)
+import org.apache.lucene.document.TextField; // For the analyzed message text
+import org.apache.lucene.index.DirectoryReader; // For reading the last commit on startup
+import org.apache.lucene.index.IndexWriter; // Adds and updates documents
+import org.apache.lucene.index.IndexWriterConfig; // Writer settings
+import org.apache.lucene.index.StoredFields; // For loading the hits
+import org.apache.lucene.index.Term; // For exact-match terms
+import org.apache.lucene.queryparser.simple.SimpleQueryParser; // Forgiving parser for user-typed queries
+import org.apache.lucene.search.BooleanClause; // For combining the text query with filters
+import org.apache.lucene.search.BooleanQuery; // For combining the text query with filters
+import org.apache.lucene.search.IndexSearcher; // Runs queries against a point-in-time view
+import org.apache.lucene.search.Query; // Base class of Lucene queries
+import org.apache.lucene.search.ScoreDoc; // One hit
+import org.apache.lucene.search.SearcherManager; // Near-real-time searchers, refreshed in the background
+import org.apache.lucene.search.Sort; // For newest-first results
+import org.apache.lucene.search.SortField; // For newest-first results
+import org.apache.lucene.search.TermQuery; // For the room and sender filters
+import org.apache.lucene.search.TopFieldCollectorManager; // Collects the newest hits
+import org.apache.lucene.store.Directory; // Where the index lives
+import org.apache.lucene.store.FSDirectory; // Index files on local disk
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Fired once the app is fully started
+import org.springframework.context.SmartLifecycle; // For opening/closing the index with the application
+import org.springframework.context.event.EventListener; // Annotation for event listeners
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Full-text index of the chat history, kept in an embedded Lucene index on local disk, so searches never touch
+ * MongoDB.
+ *
+ * Sent messages are handed over by MessageHistoryService and indexed by a single background thread, so indexing
+ * adds one queue offer to the send path. New messages become searchable within chat.search.refresh-ms (Lucene's
+ * near-real-time reader) and are committed to disk every chat.search.commit-interval-ms and on shutdown.
+ * Documents are keyed by message id, so indexing a message twice leaves one copy.
+ *
+ * The index is sorted newest-first on disk. A search sorted the same way stops as soon as it has collected
+ * enough hits, instead of visiting every match, which keeps latency flat as the history grows.
+ *
+ * On startup, an empty or half-built index is rebuilt from MessageRepository in the background: one reader per
+ * storage tier feeds a pool of indexing threads. A complete index only catches up on messages from shortly
+ * before the newest message it had indexed at its last commit, which covers anything lost in a crash, and from
+ * before the oldest message it had to drop. Until the rebuild finishes, searches see partial results.
+ */
+@Component
+public class MessageSearchIndex implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    // Commit user data: the timestamp (see toMillis) up to which the index is known to hold every message, and
+    // whether the index held the whole history at that point. Message timestamps rather than the wall clock, so
+    // that the catch-up query compares like with like.
+    static final String INDEXED_UP_TO = "indexedUpTo";
+    static final String COMPLETE = "complete";
+
+    // Document fields.
+    private static final String ID = "id";
+    private static final String ROOM = "room";
+    private static final String SENDER = "sender";
+    private static final String CONTENT = "content";
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final Sort NEWEST_FIRST = new Sort(new SortField(TIMESTAMP, SortField.Type.LONG, true));
+
+    // Messages older than the newest indexed one may still have been on their way to MongoDB or the index,
+    // e.g. relayed from another node.
+    private static final long CATCH_UP_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.search.index-dir:data/search-index}")
+    private String indexDir;
+
+    @Value("${chat.search.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.search.refresh-ms:250}")
+    private long refreshMs;
+
+    @Value("${chat.search.commit-interval-ms:60000}")
+    private long commitIntervalMs;
+
+    // Wipe the index on startup and load it from MongoDB again.
+    @Value("${chat.search.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    // Indexing threads of the bulk loader; 0 = one per core.
+    @Value("${chat.search.rebuild-threads:0}")
+    private int rebuildThreads;
+
+    // Messages handed to an indexing thread at a time by the bulk loader.
+    @Value("${chat.search.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private BlockingQueue<Message> queue;
+    private Thread indexer;
+    private ScheduledExecutorService maintenance;
+    private volatile boolean running;
+    private volatile boolean complete; // Whether the index holds every stored message (as of the last rebuild).
+    private volatile boolean loaded; // Whether the startup rebuild or catch-up has finished.
+    private Long resumeFrom; // INDEXED_UP_TO of the commit found on startup, or null if there was none.
+    // Newest message timestamp in the index, and oldest one dropped since startup (toMillis encoding).
+    private final AtomicLong newestIndexed = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong oldestDropped = new AtomicLong(Long.MAX_VALUE);
+
+    private Timer searchTimer;
+    private Counter indexedCounter;
+    private Counter droppedCounter;
+
+    /**
+     * Hands a sent message over for indexing. Never blocks: when the queue is full the message is dropped from
+     * the index for now. It stays in the history, and the catch-up on the next start indexes it.
+     * @param message The message, with its final id, room and timestamp.
+     */
+    public void enqueue(Message message) {
+        if (!running || !queue.offer(message)) {
+            droppedCounter.increment();
+            if (message.getTimestamp() != null) {
+                oldestDropped.accumulateAndGet(toMillis(message.getTimestamp()), Math::min);
+            }
+        }
+    }
+
+    /**
+     * Searches the message text, newest matches first.
+     * @param text What the user typed: words, "quoted phrases", prefix*, -excluded, a | b.
+     * @param roomId Only return messages of this room (may be null for every room).
+     * @param sender Only return messages of this sender (may be null).
+     * @param from Only return messages at or after this time (may be null).
+     * @param to Only return messages at or before this time (may be null).
+     * @param limit Maximum number of messages to return.
+     * @return The matching messages, newest first.
+     */
+    public List<Message> search(String text, String roomId, String sender, LocalDateTime from, LocalDateTime to,
+                                int limit) {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, CONTENT);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST); // Every word must match unless the user says otherwise.
+        BooleanQuery.Builder query = new BooleanQuery.Builder().add(parser.parse(text), BooleanClause.Occur.MUST);
+        // Filters do not take part in scoring, and Lucene caches the frequently used ones.
+        if (roomId != null) {
+            query.add(new TermQuery(new Term(ROOM, roomId)), BooleanClause.Occur.FILTER);
+        }
+        if (sender != null) {
+            query.add(new TermQuery(new Term(SENDER, sender)), BooleanClause.Occur.FILTER);
+        }
+        if (from != null || to != null) {
+            query.add(LongPoint.newRangeQuery(TIMESTAMP, from != null ? toMillis(from) : Long.MIN_VALUE,
+                    to != null ? toMillis(to) : Long.MAX_VALUE), BooleanClause.Occur.FILTER);
+        }
+        return searchTimer.record(() -> run(query.build(), limit));
+    }
+
+    private List<Message> run(Query query, int limit) {
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                // No total hit count is reported, so collection can stop as soon as the newest 'limit' hits are found.
+                ScoreDoc[] hits = searcher.search(query, new TopFieldCollectorManager(NEWEST_FIRST, limit, limit)).scoreDocs;
+                // One reader for all hits: newest-first hits sit next to each other on disk and share compressed blocks.
+                StoredFields storedFields = searcher.storedFields();
+                List<Message> messages = new ArrayList<>(hits.length);
+                for (ScoreDoc hit : hits) {
+                    messages.add(toMessage(storedFields.document(hit.doc)));
+                }
+                return messages;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not search the message index", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        try {
+            Path path = Paths.get(indexDir);
+            Files.createDirectories(path);
+            directory = FSDirectory.open(path);
+            Map<String, String> lastCommitData = rebuildOnStartup ? Map.of() : readCommitData(directory);
+            complete = Boolean.parseBoolean(lastCommitData.get(COMPLETE));
+            String indexedUpTo = lastCommitData.get(INDEXED_UP_TO);
+            resumeFrom = indexedUpTo != null ? Long.valueOf(indexedUpTo) : null;
+            newestIndexed.set(resumeFrom != null ? resumeFrom : Long.MIN_VALUE);
+            oldestDropped.set(Long.MAX_VALUE);
+
+            IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                    .setIndexSort(NEWEST_FIRST)
+                    // An incomplete index is started from scratch; documents from the interrupted run are re-added anyway.
+                    .setOpenMode(complete ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
+            writer = new IndexWriter(directory, config);
+            searcherManager = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the message search index in " + indexDir, e);
+        }
+
+        searchTimer = Timer.builder("chat.search.latency")
+                .description("Time taken to run one message search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        indexedCounter = outcomeCounter("indexed");
+        droppedCounter = outcomeCounter("dropped");
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("chat.search.queue.depth", queue, BlockingQueue::size)
+                .description("Messages waiting to be indexed")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.index.documents", this, index -> index.writer.getDocStats().numDocs)
+                .description("Messages in the search index")
+                .register(meterRegistry);
+
+        running = true;
+        indexer = daemonThreads("search-indexer").newThread(this::runIndexer);
+        indexer.start();
+        maintenance = Executors.newSingleThreadScheduledExecutor(daemonThreads("search-maintenance"));
+        maintenance.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::commit, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false; // The indexer drains whatever is left in the queue and then exits.
+        try {
+            indexer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        maintenance.shutdownNow();
+        try {
+            commit();
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not close the message search index cleanly: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stop after the WebSocket handlers and broker (phase Integer.MAX_VALUE), so no new messages arrive
+        // while the queue is drained.
+        return Integer.MAX_VALUE - 1000;
+    }
+
+    /**
+     * Fills or catches up the index from MongoDB once the application is up.
+     * Runs in the background so neither a large history nor an unreachable database holds up startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        Thread loader = daemonThreads("search-index-loader").newThread(() -> {
+            try {
+                load();
+            } catch (RuntimeException e) {
+                logger.warn("Could not load the message search index: " + e.getMessage());
+            }
+        });
+        loader.start();
+    }
+
+    /**
+     * Indexes every stored message (or, if the index is complete, those since its catch-up point) and commits
+     * the index as complete.
+     * @return The number of messages read from MongoDB.
+     */
+    long load() {
+        LocalDateTime since = complete && resumeFrom != null ? fromMillis(resumeFrom - CATCH_UP_MARGIN_MILLIS) : null;
+        long start = System.nanoTime();
+        int threads = rebuildThreads > 0 ? rebuildThreads : Runtime.getRuntime().availableProcessors();
+        // Readers hand batches to the indexing pool; once its queue is full they index the batch themselves,
+        // which keeps MongoDB from running ahead of the indexers.
+        ThreadPoolExecutor indexers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), daemonThreads("search-bulk-indexer"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicLong messagesRead = new AtomicLong();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Stream<Message>> tiers = messageRepository.streamAllByTier(since);
+        ExecutorService readers = Executors.newFixedThreadPool(tiers.size(), daemonThreads("search-bulk-reader"));
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (Stream<Message> tier : tiers) {
+                reads.add(readers.submit(() -> {
+                    List<Message> batch = new ArrayList<>(rebuildBatchSize);
+                    for (Message message : (Iterable<Message>) tier::iterator) {
+                        batch.add(message);
+                        if (batch.size() == rebuildBatchSize) {
+                            List<Message> full = batch;
+                            indexers.execute(() -> {
+                                try {
+                                    indexAll(full);
+                                } catch (RuntimeException e) {
+                                    failure.compareAndSet(null, e);
+                                }
+                            });
+                            messagesRead.addAndGet(full.size());
+                            batch = new ArrayList<>(rebuildBatchSize);
+                        }
+                    }
+                    indexAll(batch);
+                    messagesRead.addAndGet(batch.size());
+                    return null;
+                }));
+            }
+            for (Future<?> read : reads) {
+                read.get();
+            }
+            indexers.shutdown();
+            indexers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the message search index", e);
+        } catch (ExecutionException e) {
+            // The index stays incomplete (or keeps its old catch-up point) and is loaded again on the next start.
+            throw new IllegalStateException("Could not read the message history: " + e.getCause().getMessage(), e);
+        } finally {
+            readers.shutdownNow();
+            indexers.shutdownNow();
+            tiers.forEach(Stream::close);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        complete = true;
+        loaded = true;
+        commit();
+        refresh();
+        logger.info((since != null ? "Caught up" : "Rebuilt") + " message search index with " + messagesRead.get()
+                + " messages in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return messagesRead.get();
+    }
+
+    private void runIndexer() {
+        List<Message> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 999);
+                indexAll(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in search indexer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void indexAll(List<Message> messages) {
+        try {
+            long newest = Long.MIN_VALUE;
+            for (Message message : messages) {
+                Document document = toDocument(message);
+                writer.updateDocument(new Term(ID, message.getId()), document);
+                newest = Math.max(newest, document.getField(TIMESTAMP).numericValue().longValue());
+            }
+            newestIndexed.accumulateAndGet(newest, Math::max);
+            indexedCounter.increment(messages.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not index " + messages.size() + " messages", e);
+        }
+    }
+
+    private void refresh() {
+        try {
+            // Blocking, so a refresh already running on another thread can't make this one a no-op.
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not refresh the message search index: " + e.getMessage());
+        }
+    }
+
+    private void commit() {
+        try {
+            // Until the catch-up has finished, the index is only up to date as of the commit it started from,
+            // however new the live messages indexed meanwhile. A dropped message holds the point back.
+            long indexedUpTo = Math.min(oldestDropped.get(),
+                    loaded || resumeFrom == null ? newestIndexed.get() : resumeFrom);
+            Map<String, String> commitData = new HashMap<>();
+            commitData.put(COMPLETE, String.valueOf(complete));
+            if (indexedUpTo != Long.MIN_VALUE) { // Nothing indexed yet: a later start loads everything.
+                commitData.put(INDEXED_UP_TO, String.valueOf(indexedUpTo));
+            }
+            writer.setLiveCommitData(commitData.entrySet());
+            writer.commit();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not commit the message search index: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> readCommitData(Directory directory) throws IOException {
+        if (!DirectoryReader.indexExists(directory)) {
+            return Map.of();
+        }
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            return reader.getIndexCommit().getUserData();
+        }
+    }
+
+    private static Document toDocument(Message message) {
+        long timestamp = toMillis(message.getTimestamp());
+        Document document = new Document();
+        document.add(new StringField(ID, message.getId(), Field.Store.YES));
+        String roomId = message.getRoomId() != null ? message.getRoomId() : ChatRooms.PUBLIC_ROOM;
+        document.add(new StringField(ROOM, roomId, Field.Store.YES));
+        if (message.getSender() != null) {
+            document.add(new StringField(SENDER, message.getSender(), Field.Store.YES));
+        }
+        if (message.getContent() != null) {
+            document.add(new TextField(CONTENT, message.getContent(), Field.Store.YES));
+        }
+        document.add(new LongPoint(TIMESTAMP, timestamp)); // Range filters
+        document.add(new NumericDocValuesField(TIMESTAMP, timestamp)); // Sorting
+        document.add(new StoredField(TIMESTAMP, timestamp)); // Returned with the hit
+        return document;
+    }
+
+    private static Message toMessage(Document document) {
+        Message message = new Message(document.get(SENDER), document.get(CONTENT));
+        message.setId(document.get(ID));
+        message.setRoomId(document.get(ROOM));
+        message.setTimestamp(fromMillis(document.getField(TIMESTAMP).numericValue().longValue()));
+        return message;
+    }
+
+    // Message timestamps are zone-less; UTC is only used as a fixed encoding.
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private Counter outcomeCounter(String outcome) {
+        return Counter.builder("chat.search.messages")
+                .description("Messages handed to the search index, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.chat.service;
+
+import com.example.chat.broker.ChatRooms; // Room naming rules
+import com.example.chat.cluster.ClusterEnvelope; // A broadcast relayed between nodes
+import com.example.chat.cluster.ClusterEventType; // Chat message or join/leave notice
+import com.example.chat.cluster.ClusterRelay; // Transport between backend nodes
+import com.example.chat.cluster.ClusterSequencer; // Exactly-once, in-order delivery of relayed broadcasts
+import com.example.chat.model.Message; // Import the Message model
+import io.micrometer.core.instrument.FunctionCounter; // For counters kept by the sequencer
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.Timer; // For cross-node propagation latency
+import jakarta.annotation.PostConstruct; // For wiring the relay once dependencies are injected
+import jakarta.annotation.PreDestroy; // For stopping the gap timer
+import org.bson.types.ObjectId; // For unique envelope ids
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.messaging.simp.SimpMessageSendingOperations; // To send messages to WebSocket clients
+import org.springframework.stereotype.Service; // Marks this as a Spring service
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broadcasts chat messages and join/leave notifications to the subscribers of a room.
+ * Controllers and listeners go through this service rather than the messaging template directly, so there is a
+ * single place where every outgoing broadcast passes.
+ *
+ * When the application runs as a cluster (chat.cluster.enabled=true), every broadcast is also published through
+ * the {@link ClusterRelay}, and broadcasts relayed from other nodes are delivered to this node's subscribers
+ * exactly once and in their origin's order. Relayed chat messages also go into the recent-message cache; they are
+ * persisted by the node they were sent to.
+ */
+@Service
+public class ChatBroadcastService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatBroadcastService.class);
+
+    @Autowired // Sends to the broker channel, from where RoomFanoutBroker delivers to subscribers.
+    private SimpMessageSendingOperations messagingTemplate;
+
+    @Autowired
+    private MessageHistoryService messageHistoryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false) // Only present when clustering is enabled (see ClusterConfig).
+    private ClusterRelay clusterRelay;
+
+    // Identifies this node in relayed envelopes; a fresh random id per process when not configured.
+    @Value("${chat.cluster.node-id:}")
+    private String nodeId;
+
+    // How many recently relayed envelope ids are remembered to drop duplicates.
+    @Value("${chat.cluster.dedupe-capacity:100000}")
+    private int dedupeCapacity;
+
+    // How long a relayed broadcast waits for a missing predecessor from the same node before it is delivered anyway.
+    @Value("${chat.cluster.gap-timeout-ms:2000}")
+    private long gapTimeoutMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ClusterSequencer sequencer;
+    private ScheduledExecutorService gapTimer;
+    private Timer propagationTimer;
+
+    @PostConstruct
+    void startClusterRelay() {
+        if (clusterRelay == null) {
+            return;
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = UUID.randomUUID().toString();
+        }
+        sequencer = new ClusterSequencer(dedupeCapacity, gapTimeoutMillis);
+        propagationTimer = Timer.builder("chat.cluster.propagation.latency")
+                .description("Time from publishing a broadcast on one node to delivering it on another")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.cluster.envelopes.duplicate", this, service -> service.sequencerCount(true))
+                .description("Relayed broadcasts dropped as duplicates").register(meterRegistry);
+        FunctionCounter.builder("chat.cluster.envelopes.skipped", this, service -> service.sequencerCount(false))
+                .description("Relayed broadcasts given up on after the gap timeout").register(meterRegistry);
+
+        clusterRelay.setReceiver(this::receive);
+        gapTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-gap-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, gapTimeoutMillis / 2);
+        gapTimer.scheduleWithFixedDelay(this::expireGaps, period, period, TimeUnit.MILLISECONDS);
+        logger.info("Cluster relay enabled on node " + nodeId + " using " + clusterRelay.getClass().getSimpleName());
+    }
+
+    @PreDestroy
+    void stopClusterRelay() {
+        if (gapTimer != null) {
+            gapTimer.shutdownNow();
+        }
+    }
+
+    /**
+     * Broadcasts a chat message to everyone subscribed to the message's room, on every node of the cluster.
+     * @param message The message to broadcast; its roomId selects the destination.
+     */
+    public void broadcast(Message message) {
+        sendLocally(message);
+        relay(ClusterEventType.MESSAGE, message);
+    }
+
+    /**
+     * Broadcasts a join/leave notice to everyone subscribed to the message's room, on every node of the cluster.
+     * Unlike {@link #broadcast(Message)}, other nodes do not add notices to their history cache.
+     * @param notice The notice to broadcast; its roomId selects the destination.
+     */
+    public void announce(Message notice) {
+        sendLocally(notice);
+        relay(ClusterEventType.NOTICE, notice);
+    }
+
+    private void sendLocally(Message message) {
+        messagingTemplate.convertAndSend(ChatRooms.destinationFor(message.getRoomId()), message);
+    }
+
+    private void relay(ClusterEventType type, Message message) {
+        if (clusterRelay == null) {
+            return;
+        }
+        clusterRelay.publish(new ClusterEnvelope(new ObjectId().toHexString(), nodeId, sequence.incrementAndGet(),
+                type, System.currentTimeMillis(), message));
+    }
+
+    // Called by the relay, usually from its own thread; synchronized so deliveries never interleave out of order.
+    private synchronized void receive(ClusterEnvelope envelope) {
+        if (nodeId.equals(envelope.getOriginNodeId())) {
+            return; // Our own broadcast, already delivered locally.
+        }
+        deliver(sequencer.offer(envelope, System.currentTimeMillis()));
+    }
+
+    private synchronized void expireGaps() {
+        try {
+            deliver(sequencer.expireGaps(System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            logger.error("Failed to deliver relayed broadcasts after a gap", e);
+        }
+    }
+
+    private void deliver(List<ClusterEnvelope> envelopes) {
+        for (ClusterEnvelope envelope : envelopes) {
+            // Wall clocks of different nodes are compared here, so this is only as accurate as their time sync.
+            propagationTimer.record(Math.max(0, System.currentTimeMillis() - envelope.getPublishedAt()), TimeUnit.MILLISECONDS);
+            Message message = envelope.getMessage();
+            sendLocally(message);
+            if (envelope.getType() == ClusterEventType.MESSAGE) {
+                messageHistoryService.recordReplica(message);
+            }
+        }
+    }
+
+    private synchronized double sequencerCount(boolean duplicates) {
+        return duplicates ? sequencer.getDuplicateCount() : sequencer.getSkippedCount();
+    }
+}
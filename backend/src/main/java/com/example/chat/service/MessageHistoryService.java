@@ -0,0 +1,103 @@
+package com.example.chat.service;
+
+import com.example.chat.broker.ChatRooms; // Room naming rules
+import com.example.chat.cache.RecentMessageCache; // In-memory recent history per room
+import com.example.chat.model.Message; // Import the Message model
+import com.example.chat.model.MessageCursor; // Keyset position in the history
+import com.example.chat.persistence.MessageWriteBehindQueue; // Asynchronous, batched message persistence
+import com.example.chat.repository.MessageRepository; // Import the MessageRepository
+import com.example.chat.search.MessageSearchIndex; // Full-text index of the history
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.boot.context.event.ApplicationReadyEvent; // Fired once the app is fully started
+import org.springframework.context.event.EventListener; // Annotation for event listeners
+import org.springframework.stereotype.Service; // Marks this as a Spring service
+
+import java.util.List;
+
+/**
+ * Single entry point for reading and recording chat history.
+ * Reads are served from the {@link RecentMessageCache} whenever it holds the requested page and fall through to
+ * MongoDB otherwise; newest-page reads from MongoDB are merged back into the cache. Newly sent messages go into
+ * the cache immediately, to MongoDB through the write-behind queue, and to the search index.
+ */
+@Service
+public class MessageHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageHistoryService.class);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageWriteBehindQueue messageWriteBehindQueue;
+
+    @Autowired
+    private MessageSearchIndex messageSearchIndex;
+
+    /**
+     * Loads one page of history, with the same semantics as MessageRepository#findPage.
+     * @param roomId The room whose history is requested.
+     * @param before Only return messages strictly older than this position (may be null).
+     * @param after Only return messages strictly newer than this position (may be null).
+     * @param limit Maximum number of messages to return.
+     * @return The page, ordered oldest-first.
+     */
+    public List<Message> findPage(String roomId, MessageCursor before, MessageCursor after, int limit) {
+        List<Message> cached = recentMessageCache.findPage(roomId, before, after, limit);
+        if (cached != null) {
+            return cached;
+        }
+        List<Message> page = messageRepository.findPage(roomId, before, after, limit);
+        if (before == null && after == null) {
+            // A newest page is exactly what the cache keeps, so remember it for the next reader.
+            recentMessageCache.fill(roomId, page, page.size() < limit);
+        }
+        return page;
+    }
+
+    /**
+     * Records a message that has just been broadcast: it becomes readable from the cache right away, and is
+     * persisted to MongoDB and indexed for search asynchronously.
+     * @param message The message, with its final id, room and timestamp.
+     */
+    public void record(Message message) {
+        recentMessageCache.append(message.getRoomId(), message);
+        messageWriteBehindQueue.enqueue(message);
+        messageSearchIndex.enqueue(message);
+    }
+
+    /**
+     * Records a message that another node of the cluster broadcast and persists: it only needs to become
+     * readable from this node's cache and searchable in this node's index.
+     * @param message The relayed message, with its final id, room and timestamp.
+     */
+    public void recordReplica(Message message) {
+        recentMessageCache.append(message.getRoomId(), message);
+        messageSearchIndex.enqueue(message);
+    }
+
+    /**
+     * Warms the cache with the newest messages of the public room once the application is up.
+     * Runs in the background so an unreachable database does not hold up startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmCacheInBackground() {
+        Thread worker = new Thread(() -> {
+            try {
+                int capacity = recentMessageCache.getCapacity();
+                List<Message> newest = messageRepository.findPage(ChatRooms.PUBLIC_ROOM, null, null, capacity);
+                recentMessageCache.fill(ChatRooms.PUBLIC_ROOM, newest, newest.size() < capacity);
+                logger.info("Warmed recent-message cache with " + newest.size() + " messages");
+            } catch (RuntimeException e) {
+                logger.warn("Could not warm recent-message cache: " + e.getMessage());
+            }
+        }, "history-cache-warmup");
+        worker.setDaemon(true);
+        worker.start();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.chat.service;
+
+import com.example.chat.auth.PasswordHasher; // BCrypt on a bounded pool
+import com.example.chat.model.User; // Import the User model
+import com.example.chat.repository.UserRepository; // Import the UserRepository
+import com.github.benmanes.caffeine.cache.Cache; // In-memory cache of user lookups
+import com.github.benmanes.caffeine.cache.Caffeine; // Cache builder
+import com.github.benmanes.caffeine.cache.Expiry; // Per-entry expiry, shorter for unknown usernames
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics; // Hit/miss metrics of the cache
+import jakarta.annotation.PostConstruct; // For building the cache and pool once settings are injected
+import jakarta.annotation.PreDestroy; // For stopping the store pool on shutdown
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.dao.DuplicateKeyException; // Thrown when the unique username index rejects an insert
+import org.springframework.stereotype.Service; // Marks this as a Spring service
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registration, login and cached lookups of users.
+ *
+ * Lookups by username go through a short-lived Caffeine cache, so a burst of logins for the same users needs one
+ * MongoDB query per user rather than one per attempt; concurrent lookups of the same username share one query.
+ * Unknown usernames are cached too, but only briefly, so a user registered on another node can log in soon after.
+ * Registration is a single insert guarded by the unique index on username. Writes that follow a password hash run
+ * on a small pool of their own, so a slow MongoDB never holds up the threads that do the hashing.
+ */
+@Service
+public class UserService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // How long a found user stays cached.
+    @Value("${chat.auth.cache.ttl-ms:30000}")
+    private long ttlMillis;
+
+    // How long "no such user" stays cached.
+    @Value("${chat.auth.cache.negative-ttl-ms:2000}")
+    private long negativeTtlMillis;
+
+    @Value("${chat.auth.cache.max-size:100000}")
+    private long maxSize;
+
+    // Threads writing users to MongoDB once their password is hashed.
+    @Value("${chat.auth.store-threads:4}")
+    private int storeThreads;
+
+    private Cache<String, Optional<User>> users;
+    private ExecutorService storeExecutor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        storeExecutor = Executors.newFixedThreadPool(storeThreads, runnable -> {
+            Thread thread = new Thread(runnable, "user-store-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Optional<User>>() {
+                    @Override
+                    public long expireAfterCreate(String username, Optional<User> user, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(user.isPresent() ? ttlMillis : negativeTtlMillis);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String username, Optional<User> user, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(username, user, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String username, Optional<User> user, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration; // Reads don't extend the lifetime.
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    @PreDestroy
+    void stop() {
+        storeExecutor.shutdown();
+    }
+
+    /**
+     * Looks up a user, from the cache when possible.
+     * @param username The username.
+     * @return The user, or empty if there is no user with that name.
+     */
+    public Optional<User> findByUsername(String username) {
+        return users.get(username, userRepository::findByUsername);
+    }
+
+    /**
+     * Registers a new user with a hashed password.
+     * @param username The desired username.
+     * @param rawPassword The password as entered by the user.
+     * @return True if the user was created, false if the username is already taken. Fails with a
+     *         RejectedExecutionException when the password hashing pool is saturated.
+     */
+    public CompletableFuture<Boolean> register(String username, String rawPassword) {
+        // Only the cache is consulted: the insert below finds out about taken names without an extra query.
+        Optional<User> cached = users.getIfPresent(username);
+        if (cached != null && cached.isPresent()) {
+            return CompletableFuture.completedFuture(false); // Known taken: don't spend a hash on it.
+        }
+        return passwordHasher.hash(rawPassword).thenApplyAsync(hash -> {
+            try {
+                User user = userRepository.insert(new User(username, hash));
+                users.put(username, Optional.of(user));
+                return true;
+            } catch (DuplicateKeyException e) {
+                users.invalidate(username); // Registered concurrently, possibly on another node.
+                return false;
+            }
+        }, storeExecutor);
+    }
+
+    /**
+     * Checks a user's credentials. A correct legacy plain-text password is replaced by its hash in the background.
+     * @param username The username.
+     * @param rawPassword The password as entered by the user.
+     * @return True if the credentials are valid. Fails with a RejectedExecutionException when the password
+     *         hashing pool is saturated.
+     */
+    public CompletableFuture<Boolean> authenticate(String username, String rawPassword) {
+        Optional<User> found = findByUsername(username);
+        if (found.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        User user = found.get();
+        return passwordHasher.matches(rawPassword, user.getPassword()).thenApply(valid -> {
+            if (valid && passwordHasher.isLegacy(user.getPassword())) {
+                upgradeLegacyPassword(user, rawPassword);
+            }
+            return valid;
+        });
+    }
+
+    private void upgradeLegacyPassword(User user, String rawPassword) {
+        passwordHasher.hash(rawPassword).thenAcceptAsync(hash -> {
+            User upgraded = new User(user.getUsername(), hash);
+            upgraded.setId(user.getId());
+            userRepository.save(upgraded);
+            users.put(user.getUsername(), Optional.of(upgraded));
+            logger.info("Upgraded the plain-text password of user " + user.getUsername() + " to a hash");
+        }, storeExecutor).exceptionally(e -> {
+            logger.warn("Could not upgrade the password of user " + user.getUsername() + ": " + e.getMessage());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.chat.websocket;
+
+import org.springframework.web.socket.BinaryMessage; // Binary WebSocket message
+import org.springframework.web.socket.TextMessage; // Text WebSocket message, as produced by the STOMP handler
+import org.springframework.web.socket.WebSocketMessage; // Any outbound frame
+import org.springframework.web.socket.WebSocketSession; // The session being decorated
+import org.springframework.web.socket.handler.WebSocketSessionDecorator; // Base class for session wrappers
+
+import java.io.IOException;
+
+/**
+ * Sends STOMP frames with a CBOR body as binary WebSocket messages.
+ *
+ * Spring's STOMP handler only uses binary messages for application/octet-stream bodies and sends everything else
+ * as text, which a CBOR body is not. The encoded frame bytes are still intact inside the text message, so they are
+ * sent as they are in a binary message instead. Only used on native WebSocket sessions; SockJS has no binary
+ * messages.
+ */
+public class BinaryFrameSessionDecorator extends WebSocketSessionDecorator {
+
+    public BinaryFrameSessionDecorator(WebSocketSession delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage text) {
+            byte[] frame = text.asBytes();
+            if (WireFormats.isCborFrame(frame)) {
+                super.sendMessage(new BinaryMessage(frame, text.isLast()));
+                return;
+            }
+        }
+        super.sendMessage(message);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.chat.websocket;
+
+import com.github.benmanes.caffeine.cache.Cache; // Buckets of recently active senders
+import com.github.benmanes.caffeine.cache.Caffeine; // Cache builder
+import io.micrometer.core.instrument.Counter; // For counting rejected messages
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import jakarta.annotation.PostConstruct; // For building the cache once settings are injected
+import org.springframework.beans.factory.annotation.Autowired; // For dependency injection
+import org.springframework.beans.factory.annotation.Value; // For reading settings from application.properties
+import org.springframework.messaging.Message; // A frame received from a client
+import org.springframework.messaging.MessageChannel; // The clientInboundChannel
+import org.springframework.messaging.MessageHeaders; // Headers of the received frame
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor; // For reading simp headers without copying them
+import org.springframework.messaging.simp.SimpMessageType; // MESSAGE is a STOMP SEND
+import org.springframework.messaging.support.ChannelInterceptor; // Hook into the inbound channel
+import org.springframework.stereotype.Component; // Marks this as a Spring component
+
+import java.security.Principal;
+import java.time.Duration;
+
+/**
+ * Limits how fast each client may send chat messages, so a single flooding client can't fill the inbound
+ * channel and every room's fan-out with its messages.
+ *
+ * Runs on the thread that read the frame from the client's connection, before the frame is queued for the
+ * inbound channel's pool. Messages over the limit are dropped there and counted. Senders are identified by the
+ * authenticated principal of the connection if there is one, and otherwise by the WebSocket session. The
+ * username sent with chat.addUser is not used: it is whatever the client claims, so keying on it would let a
+ * client use up someone else's budget. Every sender has a {@link TokenBucket}, forgotten a minute after their
+ * last message.
+ */
+@Component
+public class SendRateLimitInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Sustained chat messages per second per sender; 0 disables the limit.
+    @Value("${chat.websocket.rate-limit.messages-per-second:10}")
+    private double messagesPerSecond;
+
+    // Messages a sender may send in a burst before the sustained rate applies.
+    @Value("${chat.websocket.rate-limit.burst:20}")
+    private int burst;
+
+    private Cache<String, TokenBucket> buckets;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    void start() {
+        buckets = Caffeine.newBuilder().expireAfterAccess(Duration.ofMinutes(1)).build();
+        rejectedCounter = Counter.builder("chat.websocket.rate-limited")
+                .description("Chat messages dropped because the sender exceeded the rate limit").register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (messagesPerSecond <= 0) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        if (!SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))
+                || !isChatMessage(SimpMessageHeaderAccessor.getDestination(headers))) {
+            return message;
+        }
+        TokenBucket bucket = buckets.get(senderKey(headers), key -> new TokenBucket(messagesPerSecond, burst));
+        if (bucket.tryAcquire()) {
+            return message;
+        }
+        rejectedCounter.increment();
+        return null; // Dropped: the message is never broadcast or stored.
+    }
+
+    // "/app/chat.sendMessage" and "/app/chat.room.{roomId}.sendMessage"
+    private static boolean isChatMessage(String destination) {
+        return destination != null && destination.startsWith("/app/chat.") && destination.endsWith(".sendMessage");
+    }
+
+    private static String senderKey(MessageHeaders headers) {
+        Principal principal = SimpMessageHeaderAccessor.getUser(headers);
+        return principal != null ? "user:" + principal.getName()
+                : "session:" + SimpMessageHeaderAccessor.getSessionId(headers);
+    }
+}
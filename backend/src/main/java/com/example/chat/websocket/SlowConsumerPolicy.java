@@ -0,0 +1,12 @@
+package com.example.chat.websocket;
+
+/**
+ * What happens to a session whose unsent frames exceed chat.websocket.send-buffer-size-limit.
+ * A send blocked for longer than chat.websocket.send-time-limit-ms always disconnects, whatever the policy.
+ */
+public enum SlowConsumerPolicy {
+    /** Close the session; the client has to reconnect and reload the history. Spring's default behaviour. */
+    DISCONNECT,
+    /** Drop the oldest broadcasts waiting for the session and mark the gap on the next one that is sent. */
+    DROP
+}
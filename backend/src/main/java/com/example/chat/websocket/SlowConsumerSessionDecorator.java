@@ -0,0 +1,211 @@
+package com.example.chat.websocket;
+
+import io.micrometer.core.instrument.Counter; // For counting dropped frames and disconnects
+import org.slf4j.Logger; // For logging
+import org.slf4j.LoggerFactory; // For logging
+import org.springframework.web.socket.BinaryMessage; // Frames of binary WebSocket sessions
+import org.springframework.web.socket.CloseStatus; // Reason given to the client on close
+import org.springframework.web.socket.TextMessage; // Frames of text WebSocket and SockJS sessions
+import org.springframework.web.socket.WebSocketMessage; // Any outbound frame
+import org.springframework.web.socket.WebSocketSession; // The session being decorated
+import org.springframework.web.socket.handler.SessionLimitExceededException; // Makes Spring close the session
+import org.springframework.web.socket.handler.WebSocketSessionDecorator; // Base class for session wrappers
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends frames to one client without letting a slow client hold up the threads that deliver to it.
+ *
+ * Works like Spring's ConcurrentWebSocketSessionDecorator, which it replaces: one thread at a time writes to the
+ * socket, and frames for the session that arrive meanwhile are buffered so their threads can move on to other
+ * sessions. The difference is what happens when the buffer grows past its limit: with
+ * {@link SlowConsumerPolicy#DROP} the oldest buffered broadcasts (STOMP MESSAGE frames) are dropped instead of
+ * closing the session, and the next broadcast that does get sent carries an "x-dropped" header with the number
+ * of broadcasts dropped before it, so the client can reload that part of the history.
+ * Protocol frames (CONNECTED, RECEIPT, ERROR, heart-beats) are never dropped.
+ *
+ * A write blocked for longer than the send time limit means the client is effectively gone, and the session is
+ * closed under either policy.
+ */
+public class SlowConsumerSessionDecorator extends WebSocketSessionDecorator {
+
+    static final String DROPPED_HEADER = "x-dropped";
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowConsumerSessionDecorator.class);
+    // Every broadcast is a STOMP MESSAGE frame, which starts with this line.
+    private static final String MESSAGE_COMMAND_TEXT = "MESSAGE\n";
+    private static final byte[] MESSAGE_COMMAND = MESSAGE_COMMAND_TEXT.getBytes(StandardCharsets.UTF_8);
+
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final SlowConsumerPolicy policy;
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+
+    private final Queue<WebSocketMessage<?>> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferSize = new AtomicInteger();
+    // Broadcasts dropped since the last one that was sent; reported on the next sent broadcast.
+    private final AtomicInteger droppedSinceSent = new AtomicInteger();
+    private volatile long sendStartTime;
+    private volatile boolean closing;
+    private final Lock flushLock = new ReentrantLock();
+    private final Lock limitLock = new ReentrantLock();
+
+    /**
+     * @param delegate The session to send to.
+     * @param sendTimeLimit Milliseconds a single write may block before the session is closed.
+     * @param bufferSizeLimit Bytes that may wait for the session before the policy applies.
+     * @param policy What to do when the buffer limit is exceeded.
+     * @param droppedCounter Incremented per dropped broadcast.
+     * @param disconnectedCounter Incremented per session closed for being too slow.
+     */
+    public SlowConsumerSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit,
+                                       SlowConsumerPolicy policy, Counter droppedCounter, Counter disconnectedCounter) {
+        super(delegate);
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.policy = policy;
+        this.droppedCounter = droppedCounter;
+        this.disconnectedCounter = disconnectedCounter;
+    }
+
+    /**
+     * @return Bytes of frames waiting to be written.
+     */
+    public int getBufferSize() {
+        return bufferSize.get();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+        buffer.add(message);
+        bufferSize.addAndGet(message.getPayloadLength());
+        do {
+            if (!tryFlush()) {
+                // Another thread is writing to this session; leave the frame to it unless it's stuck.
+                checkLimits();
+                break;
+            }
+        } while (!buffer.isEmpty() && !closing);
+    }
+
+    private boolean tryFlush() throws IOException {
+        if (!flushLock.tryLock()) {
+            return false;
+        }
+        try {
+            WebSocketMessage<?> message;
+            while (!closing && (message = buffer.poll()) != null) {
+                bufferSize.addAndGet(-message.getPayloadLength());
+                sendStartTime = System.currentTimeMillis();
+                getDelegate().sendMessage(markGap(message));
+                sendStartTime = 0;
+            }
+        } finally {
+            sendStartTime = 0;
+            flushLock.unlock();
+        }
+        return true;
+    }
+
+    private void checkLimits() {
+        if (closing || !limitLock.tryLock()) {
+            return;
+        }
+        try {
+            long sendStarted = sendStartTime;
+            if (sendStarted > 0 && System.currentTimeMillis() - sendStarted > sendTimeLimit) {
+                disconnect("Send time exceeded " + sendTimeLimit + " ms");
+            } else if (bufferSize.get() > bufferSizeLimit) {
+                if (policy == SlowConsumerPolicy.DROP) {
+                    dropOldestBroadcasts();
+                } else {
+                    disconnect("Buffer size " + bufferSize.get() + " bytes exceeded " + bufferSizeLimit);
+                }
+            }
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    private void dropOldestBroadcasts() {
+        int dropped = 0;
+        for (WebSocketMessage<?> message : buffer) {
+            if (bufferSize.get() <= bufferSizeLimit) {
+                break;
+            }
+            // remove() fails if the writing thread took the frame in the meantime.
+            if (isBroadcast(message) && buffer.remove(message)) {
+                bufferSize.addAndGet(-message.getPayloadLength());
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            droppedSinceSent.addAndGet(dropped);
+            droppedCounter.increment(dropped);
+        }
+    }
+
+    private void disconnect(String reason) {
+        closing = true;
+        buffer.clear();
+        bufferSize.set(0);
+        disconnectedCounter.increment();
+        logger.warn("Disconnecting slow client session " + getId() + ": " + reason);
+        // SubProtocolWebSocketHandler closes the session and cleans up when it sees this exception.
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closing = true;
+        super.close(status);
+    }
+
+    // Adds the gap marker to the first broadcast sent after broadcasts were dropped.
+    private WebSocketMessage<?> markGap(WebSocketMessage<?> message) {
+        if (droppedSinceSent.get() == 0 || !isBroadcast(message)) {
+            return message;
+        }
+        String header = DROPPED_HEADER + ":" + droppedSinceSent.getAndSet(0) + "\n";
+        if (message instanceof TextMessage text) {
+            return new TextMessage(MESSAGE_COMMAND_TEXT + header
+                    + text.getPayload().substring(MESSAGE_COMMAND_TEXT.length()), text.isLast());
+        }
+        ByteBuffer payload = ((BinaryMessage) message).getPayload().duplicate();
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer marked = ByteBuffer.allocate(payload.remaining() + headerBytes.length);
+        marked.put(MESSAGE_COMMAND).put(headerBytes).put(payload.position(payload.position() + MESSAGE_COMMAND.length));
+        return new BinaryMessage(marked.flip(), message.isLast());
+    }
+
+    // Broadcasts are STOMP MESSAGE frames; everything else is protocol and must be delivered.
+    static boolean isBroadcast(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.getPayload().startsWith(MESSAGE_COMMAND_TEXT);
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            if (payload.remaining() < MESSAGE_COMMAND.length) {
+                return false;
+            }
+            for (int i = 0; i < MESSAGE_COMMAND.length; i++) {
+                if (payload.get(payload.position() + i) != MESSAGE_COMMAND[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.chat.websocket;
+
+import io.micrometer.core.instrument.Counter; // For counting dropped frames and disconnects
+import io.micrometer.core.instrument.MeterRegistry; // Micrometer registry provided by Spring Boot Actuator
+import org.springframework.messaging.MessageChannel; // Frames received from clients go here
+import org.springframework.messaging.SubscribableChannel; // Frames for clients come from here
+import org.springframework.web.socket.WebSocketSession; // A client connection
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler; // Spring's STOMP-over-WebSocket handler
+import org.springframework.web.socket.sockjs.transport.SockJsSession; // Sessions that can only carry text
+
+/**
+ * Spring's STOMP WebSocket handler, with every session wrapped in a {@link SlowConsumerSessionDecorator}
+ * instead of Spring's own decorator, so slow clients are handled by the configured {@link SlowConsumerPolicy}.
+ * Native WebSocket sessions are also marked as able to receive binary frames, and their CBOR frames are sent as
+ * binary messages (see {@link WireFormats}).
+ * The send time and buffer size limits are the ones set through WebSocketConfig#configureWebSocketTransport.
+ */
+public class SlowConsumerWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final SlowConsumerPolicy policy;
+    private final Counter droppedCounter;
+    private final Counter disconnectedCounter;
+
+    public SlowConsumerWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                        SlowConsumerPolicy policy, MeterRegistry meterRegistry) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.policy = policy;
+        this.droppedCounter = Counter.builder("chat.websocket.slow-consumer.dropped")
+                .description("Broadcasts dropped because the client could not keep up").register(meterRegistry);
+        this.disconnectedCounter = Counter.builder("chat.websocket.slow-consumer.disconnected")
+                .description("Sessions closed because the client could not keep up").register(meterRegistry);
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        WebSocketSession decorated = new SlowConsumerSessionDecorator(session, getSendTimeLimit(),
+                getSendBufferSizeLimit(), policy, droppedCounter, disconnectedCounter);
+        if (session instanceof SockJsSession) {
+            return decorated;
+        }
+        // Read by the broker from the session attributes of every frame the session sends, e.g. SUBSCRIBE.
+        session.getAttributes().put(WireFormats.BINARY_FRAMES_ATTRIBUTE, Boolean.TRUE);
+        // Outermost, so the slow consumer decorator already buffers (and marks) the binary message.
+        return new BinaryFrameSessionDecorator(decorated);
+    }
+}
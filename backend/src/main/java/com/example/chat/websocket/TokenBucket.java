@@ -0,0 +1,50 @@
+package com.example.chat.websocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free token bucket: up to {@code capacity} requests at once, refilled at {@code ratePerSecond}.
+ *
+ * Instead of a token count and a refill timestamp, which would have to be updated together, the whole state is
+ * one number: the time at which the bucket will be full again (the "theoretical arrival time" of the generic
+ * cell rate algorithm). Taking a token pushes that time one refill interval further; a token is available as
+ * long as the time stays within capacity intervals of now. A single compare-and-set updates it, so concurrent
+ * callers never block each other.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(double ratePerSecond, int capacity) {
+        this(ratePerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double ratePerSecond, int capacity, LongSupplier nanoClock) {
+        this.nanosPerToken = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstNanos = nanosPerToken * capacity;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Takes one token if one is available.
+     * @return False if the bucket is empty, i.e. the caller is over its rate.
+     */
+    public boolean tryAcquire() {
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + nanosPerToken;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory; // Reads the JSON form of a payload
+import com.fasterxml.jackson.core.JsonGenerator; // Writes the CBOR form of a payload
+import com.fasterxml.jackson.core.JsonParser; // Streams over the JSON tokens
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory; // Jackson's CBOR (RFC 8949) data format
+import org.springframework.util.MimeType; // Content types of STOMP payloads
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The payload encodings a STOMP client can choose between: JSON, the default, and CBOR, a binary encoding of the
+ * same JSON data model that is smaller and cheaper to produce.
+ *
+ * A client asks for CBOR with a content-type:application/cbor header: on a SEND frame for the payload it sends,
+ * and on a SUBSCRIBE frame for the broadcasts it receives on that subscription. CBOR is only available on native
+ * WebSocket sessions (the /ws-native endpoint), because SockJS can only carry text; on SockJS sessions the header
+ * of a SUBSCRIBE frame is ignored and the subscription receives JSON.
+ */
+public final class WireFormats {
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+
+    /**
+     * Session attribute set on sessions whose frames can be sent as binary WebSocket messages.
+     */
+    public static final String BINARY_FRAMES_ATTRIBUTE = "chat.binaryFrames";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private static final byte[] CBOR_CONTENT_TYPE_HEADER =
+            ("content-type:" + CBOR).getBytes(StandardCharsets.UTF_8);
+
+    private WireFormats() {
+    }
+
+    /**
+     * Re-encodes a JSON document as CBOR, token by token, without binding it to Java objects.
+     * @param json The UTF-8 JSON document.
+     * @return The same document in CBOR.
+     * @throws IOException If the input is not valid JSON.
+     */
+    public static byte[] jsonToCbor(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = JSON_FACTORY.createParser(json);
+             JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks the headers of an encoded STOMP frame for a CBOR body, reading no further than the blank line that
+     * ends them.
+     * @param frame The frame as encoded by the STOMP protocol handler.
+     * @return True if the frame has a content-type:application/cbor header.
+     */
+    public static boolean isCborFrame(byte[] frame) {
+        int lineStart = indexOf(frame, 0, (byte) '\n') + 1; // Skip the command line.
+        while (lineStart > 0 && lineStart < frame.length && frame[lineStart] != '\n' && frame[lineStart] != '\r') {
+            if (isHeader(frame, lineStart, CBOR_CONTENT_TYPE_HEADER)) {
+                return true;
+            }
+            lineStart = indexOf(frame, lineStart, (byte) '\n') + 1;
+        }
+        return false;
+    }
+
+    // True if the header line at the given offset is exactly the given header, optionally with parameters.
+    private static boolean isHeader(byte[] frame, int offset, byte[] header) {
+        int end = offset + header.length;
+        if (end > frame.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (frame[offset + i] != header[i]) {
+                return false;
+            }
+        }
+        return end == frame.length || frame[end] == '\n' || frame[end] == '\r' || frame[end] == ';';
+    }
+
+    private static int indexOf(byte[] bytes, int from, byte value) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
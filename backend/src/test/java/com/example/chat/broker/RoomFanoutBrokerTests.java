@@ -0,0 +1,229 @@
+package com.example.chat.broker;
+
+import com.example.chat.websocket.WireFormats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomFanoutBrokerTests {
+
+	private final BlockingQueue<Message<?>> delivered = new LinkedBlockingQueue<>();
+	private final ExecutorService outboundPool = Executors.newFixedThreadPool(4);
+	private RoomFanoutBroker broker;
+
+	@BeforeEach
+	void setUp() {
+		// Like the real clientOutboundChannel: sends are handed to a thread pool, which on its own reorders them.
+		ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel(outboundPool);
+		clientOutboundChannel.subscribe(message -> {
+			if (((byte[]) message.getPayload()).length > 0 && ((byte[]) message.getPayload())[0] % 3 == 0) {
+				sleep(); // An occasional slow write, as for a client on a slow network.
+			}
+			delivered.add(message);
+		});
+		broker = new RoomFanoutBroker(new ExecutorSubscribableChannel(), clientOutboundChannel,
+				new ExecutorSubscribableChannel(), new MappingJackson2MessageConverter(), 2, 100);
+		broker.setPreservePublishOrder(true);
+		broker.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		broker.stop();
+		outboundPool.shutdownNow();
+	}
+
+	@Test
+	void everySubscriberOfARoomReceivesTheSamePayload() throws Exception {
+		subscribe("s1", "sub-0", "/topic/room.dev");
+		subscribe("s2", "sub-0", "/topic/room.dev");
+		subscribe("s3", "sub-0", "/topic/public");
+		byte[] payload = "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+		broker.handleMessage(broadcast("/topic/room.dev", payload));
+
+		List<Message<?>> received = take(2);
+		assertThat(received).extracting(message -> SimpMessageHeaderAccessor.getSessionId(message.getHeaders())).containsExactlyInAnyOrder("s1", "s2");
+		for (Message<?> message : received) {
+			// Serialized once: every session gets the very same byte array.
+			assertThat(message.getPayload()).isSameAs(payload);
+			StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+			assertThat(accessor.getDestination()).isEqualTo("/topic/room.dev");
+			assertThat(accessor.getSubscriptionId()).isEqualTo("sub-0");
+			assertThat(accessor.getMessageId()).isNotNull();
+		}
+		assertThat(delivered.poll(200, TimeUnit.MILLISECONDS)).isNull();
+	}
+
+	@Test
+	void objectPayloadsAreConvertedOnce() throws Exception {
+		subscribe("s1", "sub-0", "/topic/public");
+		subscribe("s2", "sub-0", "/topic/public");
+
+		broker.handleMessage(MessageBuilder.withPayload(List.of("hello")).setHeader(
+				SimpMessageHeaderAccessor.DESTINATION_HEADER, "/topic/public").setHeader(
+				SimpMessageHeaderAccessor.MESSAGE_TYPE_HEADER, SimpMessageType.MESSAGE).build());
+
+		List<Message<?>> received = take(2);
+		assertThat(new String((byte[]) received.get(0).getPayload(), StandardCharsets.UTF_8)).isEqualTo("[\"hello\"]");
+		assertThat(received.get(1).getPayload()).isSameAs(received.get(0).getPayload());
+	}
+
+	@Test
+	void cborSubscribersShareOneTranscodedPayload() throws Exception {
+		subscribeCbor("s1", "sub-0", "/topic/public", true);
+		subscribeCbor("s2", "sub-0", "/topic/public", true);
+		subscribeCbor("s3", "sub-0", "/topic/public", false); // SockJS: stays on JSON.
+		subscribe("s4", "sub-0", "/topic/public");
+		byte[] json = "{\"sender\":\"alice\",\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setDestination("/topic/public");
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+
+		broker.handleMessage(MessageBuilder.createMessage(json, accessor.getMessageHeaders()));
+
+		Map<String, Message<?>> received = new HashMap<>();
+		take(4).forEach(message -> received.put(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()), message));
+		Message<?> cbor = received.get("s1");
+		assertThat(StompHeaderAccessor.wrap(cbor).getContentType()).isEqualTo(WireFormats.CBOR);
+		JsonNode decoded = new CBORMapper().readTree((byte[]) cbor.getPayload());
+		assertThat(decoded.get("content").asText()).isEqualTo("hi");
+		assertThat(received.get("s2").getPayload()).isSameAs(cbor.getPayload());
+		assertThat(received.get("s3").getPayload()).isSameAs(json);
+		assertThat(received.get("s4").getPayload()).isSameAs(json);
+		assertThat(StompHeaderAccessor.wrap(received.get("s4")).getContentType()).isEqualTo(MimeTypeUtils.APPLICATION_JSON);
+	}
+
+	@Test
+	void unsubscribeAndDisconnectStopDelivery() throws Exception {
+		subscribe("s1", "sub-0", "/topic/public");
+		subscribe("s1", "sub-1", "/topic/room.dev");
+		subscribe("s2", "sub-0", "/topic/public");
+		assertThat(broker.getSessionCount()).isEqualTo(2);
+
+		broker.handleMessage(control(SimpMessageType.UNSUBSCRIBE, "s2", "sub-0"));
+		assertThat(broker.getSubscriberCount("/topic/public")).isEqualTo(1);
+
+		broker.handleMessage(control(SimpMessageType.DISCONNECT, "s1", null));
+		assertThat(broker.getSessionCount()).isEqualTo(1); // s2 is still connected, just not subscribed.
+		assertThat(broker.getSubscriberCount("/topic/public")).isZero();
+		assertThat(broker.getSubscriberCount("/topic/room.dev")).isZero();
+
+		broker.handleMessage(broadcast("/topic/public", new byte[] {1}));
+		assertThat(delivered.poll(200, TimeUnit.MILLISECONDS)).isNull();
+	}
+
+	@Test
+	void messagesOfOneSessionArriveInOrder() throws Exception {
+		subscribe("s1", "sub-0", "/topic/public");
+
+		for (int i = 0; i < 50; i++) {
+			broker.handleMessage(broadcast("/topic/public", new byte[] {(byte) i}));
+		}
+
+		List<Message<?>> received = take(50);
+		for (int i = 0; i < 50; i++) {
+			assertThat(((byte[]) received.get(i).getPayload())[0]).isEqualTo((byte) i);
+		}
+	}
+
+	@Test
+	void fanoutSizeIsRecordedPerDestinationUpToTheTagLimit() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		broker.setMeterRegistry(registry, 2);
+		subscribe("s1", "sub-0", "/topic/public");
+		subscribe("s2", "sub-0", "/topic/public");
+		subscribe("s1", "sub-1", "/topic/room.a");
+		subscribe("s1", "sub-2", "/topic/room.b");
+
+		broker.handleMessage(broadcast("/topic/public", new byte[] {1}));
+		broker.handleMessage(broadcast("/topic/room.a", new byte[] {1}));
+		broker.handleMessage(broadcast("/topic/room.b", new byte[] {1}));
+		broker.handleMessage(broadcast("/topic/room.b", new byte[] {1}));
+		take(5);
+
+		assertThat(fanoutSize(registry, "/topic/public").totalAmount()).isEqualTo(2);
+		assertThat(fanoutSize(registry, "/topic/room.a").count()).isEqualTo(1);
+		// Beyond the limit, rooms share one time series.
+		assertThat(registry.find("chat.broker.fanout.size").tag("destination", "/topic/room.b").summary()).isNull();
+		assertThat(fanoutSize(registry, RoomFanoutBroker.OTHER_DESTINATIONS).count()).isEqualTo(2);
+	}
+
+	private static DistributionSummary fanoutSize(SimpleMeterRegistry registry, String destination) {
+		return registry.get("chat.broker.fanout.size").tag("destination", destination).summary();
+	}
+
+	private void subscribe(String sessionId, String subscriptionId, String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private void subscribeCbor(String sessionId, String subscriptionId, String destination, boolean binaryFrames) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		accessor.setContentType(WireFormats.CBOR);
+		accessor.setSessionAttributes(binaryFrames ? Map.of(WireFormats.BINARY_FRAMES_ATTRIBUTE, true) : Map.of());
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+	}
+
+	private static Message<?> control(SimpMessageType type, String sessionId, String subscriptionId) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static Message<?> broadcast(String destination, byte[] payload) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+	}
+
+	private static void sleep() {
+		try {
+			Thread.sleep(2);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<Message<?>> take(int count) throws InterruptedException {
+		List<Message<?>> received = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Message<?> message = delivered.poll(5, TimeUnit.SECONDS);
+			assertThat(message).as("delivery %d of %d", i + 1, count).isNotNull();
+			received.add(message);
+		}
+		return received;
+	}
+}
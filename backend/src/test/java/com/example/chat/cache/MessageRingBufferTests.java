@@ -0,0 +1,102 @@
+package com.example.chat.cache;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageCursor;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.chat.support.TestMessages.contents;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageRingBufferTests {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	void concurrentAppendsEndUpInTimestampOrder() throws Exception {
+		MessageRingBuffer buffer = new MessageRingBuffer(10_000, Long.MAX_VALUE);
+		List<Message> messages = messages(4_000);
+		ExecutorService writers = Executors.newFixedThreadPool(8);
+		CountDownLatch go = new CountDownLatch(1);
+		for (int w = 0; w < 8; w++) {
+			int writer = w;
+			writers.submit(() -> {
+				go.await();
+				// Each writer appends an interleaved slice in reverse, so arrivals are badly out of order.
+				for (int i = messages.size() - 1 - writer; i >= 0; i -= 8) {
+					buffer.append(messages.get(i));
+				}
+				return null;
+			});
+		}
+		go.countDown();
+		writers.shutdown();
+		assertThat(writers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(buffer.latest(messages.size())).isEqualTo(messages);
+	}
+
+	@Test
+	void oldestMessagesAreEvictedByCountAndByMemory() {
+		MessageRingBuffer byCount = new MessageRingBuffer(3, Long.MAX_VALUE);
+		List<Message> messages = messages(5);
+		messages.forEach(byCount::append);
+		assertThat(byCount.latest(3)).isEqualTo(messages.subList(2, 5));
+
+		long twoMessages = 2 * MessageRingBuffer.estimateBytes(messages.get(0));
+		MessageRingBuffer byMemory = new MessageRingBuffer(100, twoMessages);
+		messages.forEach(byMemory::append);
+		assertThat(byMemory.size()).isEqualTo(2);
+		assertThat(byMemory.bytes()).isLessThanOrEqualTo(twoMessages);
+	}
+
+	@Test
+	void pagesBeyondTheBufferAreMissesUntilTheWholeHistoryIsKnown() {
+		MessageRingBuffer buffer = new MessageRingBuffer(100, Long.MAX_VALUE);
+		List<Message> messages = messages(6);
+		messages.subList(3, 6).forEach(buffer::append);
+
+		assertThat(buffer.latest(3)).isEqualTo(messages.subList(3, 6));
+		assertThat(buffer.latest(4)).isNull();
+		assertThat(buffer.before(MessageCursor.of(messages.get(5)), 2)).isEqualTo(messages.subList(3, 5));
+		assertThat(buffer.before(MessageCursor.of(messages.get(4)), 2)).isNull();
+		assertThat(buffer.after(MessageCursor.of(messages.get(3)), 10)).isEqualTo(messages.subList(4, 6));
+		assertThat(buffer.after(MessageCursor.of(messages.get(1)), 10)).isNull();
+
+		// MongoDB returns the full (short) history: now every page can be answered from memory.
+		buffer.fill(messages, true);
+		assertThat(buffer.latest(10)).isEqualTo(messages);
+		assertThat(buffer.before(MessageCursor.of(messages.get(2)), 10)).isEqualTo(messages.subList(0, 2));
+		assertThat(buffer.after(MessageCursor.of(messages.get(0)), 2)).isEqualTo(messages.subList(1, 3));
+	}
+
+	@Test
+	void fillKeepsTheNewestMessagesWhenItDoesNotFit() {
+		MessageRingBuffer buffer = new MessageRingBuffer(3, Long.MAX_VALUE);
+		List<Message> messages = messages(5);
+
+		buffer.fill(messages, true);
+
+		assertThat(contents(buffer.latest(3))).isEqualTo(contents(messages.subList(2, 5)));
+		assertThat(buffer.latest(4)).isNull(); // Two messages did not fit, so the buffer is not complete.
+	}
+
+	private static List<Message> messages(int count) {
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Message message = new Message("alice", "message " + i);
+			message.setId(new ObjectId().toHexString());
+			message.setTimestamp(START.plusNanos(i * 1_000_000L));
+			messages.add(message);
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.chat.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterSequencerTests {
+
+	private final ClusterSequencer sequencer = new ClusterSequencer(100, 1000);
+
+	@Test
+	void envelopesAreReleasedInSequenceOrderPerOrigin() {
+		assertThat(sequences(sequencer.offer(envelope("a", 1), 10))).containsExactly(1L);
+		assertThat(sequencer.offer(envelope("a", 3), 20)).isEmpty();
+		assertThat(sequences(sequencer.offer(envelope("b", 7), 30))).containsExactly(7L); // Other origins aren't held up.
+		assertThat(sequencer.offer(envelope("a", 4), 40)).isEmpty();
+
+		assertThat(sequences(sequencer.offer(envelope("a", 2), 50))).containsExactly(2L, 3L, 4L);
+	}
+
+	@Test
+	void duplicatesAreDroppedByIdAndBySequence() {
+		ClusterEnvelope first = envelope("a", 1);
+		sequencer.offer(first, 10);
+
+		assertThat(sequencer.offer(first, 20)).isEmpty(); // Same id, e.g. re-read after a cursor loss.
+		assertThat(sequencer.offer(envelope("a", 1), 30)).isEmpty(); // Same position, different id.
+		assertThat(sequencer.getDuplicateCount()).isEqualTo(2);
+	}
+
+	@Test
+	void gapsAreSkippedAfterTheTimeout() {
+		sequencer.offer(envelope("a", 1), 0);
+		sequencer.offer(envelope("a", 3), 100);
+		sequencer.offer(envelope("a", 4), 200);
+
+		assertThat(sequencer.expireGaps(1000)).isEmpty(); // The gap opened at 100, so it may wait until 1100.
+		assertThat(sequences(sequencer.expireGaps(1100))).containsExactly(3L, 4L);
+		assertThat(sequencer.getSkippedCount()).isEqualTo(1);
+
+		// The lost envelope showing up late is not delivered out of order.
+		assertThat(sequencer.offer(envelope("a", 2), 1200)).isEmpty();
+		assertThat(sequences(sequencer.offer(envelope("a", 5), 1300))).containsExactly(5L);
+	}
+
+	private static ClusterEnvelope envelope(String origin, long sequence) {
+		return new ClusterEnvelope(origin + "-" + sequence + "-" + System.nanoTime(), origin, sequence,
+				ClusterEventType.MESSAGE, 0, null);
+	}
+
+	private static List<Long> sequences(List<ClusterEnvelope> envelopes) {
+		return envelopes.stream().map(ClusterEnvelope::getSequence).collect(Collectors.toList());
+	}
+}
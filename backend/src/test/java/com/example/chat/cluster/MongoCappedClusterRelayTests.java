@@ -0,0 +1,115 @@
+package com.example.chat.cluster;
+
+import com.example.chat.model.Message;
+import com.example.chat.support.InMemoryMongo;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * mongo-java-server has no capped collections, so a full log is simulated: once more envelopes were published than
+ * it holds, the oldest ones are evicted as MongoDB would. The memory backend reuses the slots of deleted documents,
+ * so evicting rewrites the log in insertion order instead of deleting from it.
+ */
+class MongoCappedClusterRelayTests {
+
+	private static final String COLLECTION = "cluster_events";
+	private static final int LOG_CAPACITY = 200; // More than the resume overlap, so positions are visible.
+
+	private InMemoryMongo mongo;
+	private MongoTemplate mongoTemplate;
+	private MongoCollection<Document> log;
+	private MongoCappedClusterRelay relay;
+	private long sequence;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		mongoTemplate = mongo.template();
+		log = mongoTemplate.getCollection(COLLECTION);
+		relay = new MongoCappedClusterRelay(mongoTemplate, COLLECTION, 1024 * 1024, 100);
+		ReflectionTestUtils.setField(relay, "running", true); // Tail without starting the background threads.
+	}
+
+	@AfterEach
+	void tearDown() {
+		mongo.close();
+	}
+
+	@Test
+	void theFirstTailStartsAfterTheNewestEnvelope() {
+		publishFromPeer(LOG_CAPACITY);
+
+		assertThat(reopenCursor()).isEmpty();
+
+		List<String> published = publishFromPeer(3);
+		assertThat(reopenCursor()).containsExactlyElementsOf(published);
+	}
+
+	@Test
+	void reopeningTheCursorOnAFullLogReadsWhatWasPublishedMeanwhile() {
+		publishFromPeer(LOG_CAPACITY);
+		assertThat(reopenCursor()).isEmpty(); // The first tail, which then loses its cursor before receiving anything.
+
+		List<String> published = publishFromPeer(150); // The log stays full: as many envelopes evicted.
+
+		assertThat(reopenCursor()).containsExactlyElementsOf(published);
+	}
+
+	@Test
+	void reopeningTheCursorAfterReceivingResumesRightAfterTheLastEnvelope() {
+		assertThat(reopenCursor()).isEmpty();
+		List<String> received = publishFromPeer(LOG_CAPACITY);
+		assertThat(reopenCursor()).containsExactlyElementsOf(received);
+
+		List<String> published = publishFromPeer(150);
+
+		assertThat(reopenCursor()).containsExactlyElementsOf(published); // The overlap read before them is discarded.
+	}
+
+	@Test
+	void aRecreatedLogIsReadFromTheStart() {
+		publishFromPeer(10);
+		assertThat(reopenCursor()).isEmpty();
+
+		log.drop();
+		List<String> published = publishFromPeer(3);
+
+		assertThat(reopenCursor()).containsExactlyElementsOf(published);
+	}
+
+	// Runs one tail until the cursor ends (the test server has no tailable cursors) and returns what it received.
+	private List<String> reopenCursor() {
+		List<String> received = new ArrayList<>();
+		relay.setReceiver(envelope -> received.add(envelope.getId()));
+		ReflectionTestUtils.invokeMethod(relay, "tail");
+		return received;
+	}
+
+	private List<String> publishFromPeer(int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ClusterEnvelope envelope = new ClusterEnvelope(new ObjectId().toHexString(), "peer",
+					++sequence, ClusterEventType.MESSAGE, System.currentTimeMillis(), new Message("alice", "m" + sequence));
+			mongoTemplate.insert(envelope, COLLECTION);
+			ids.add(envelope.getId());
+		}
+		List<Document> kept = log.find().into(new ArrayList<>());
+		if (kept.size() > LOG_CAPACITY) {
+			log.drop();
+			log.insertMany(kept.subList(kept.size() - LOG_CAPACITY, kept.size()));
+		}
+		return ids;
+	}
+
+}
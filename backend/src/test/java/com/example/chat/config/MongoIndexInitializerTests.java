@@ -0,0 +1,62 @@
+package com.example.chat.config;
+
+import com.example.chat.model.User;
+import com.example.chat.support.InMemoryMongo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongoIndexInitializerTests {
+
+	private InMemoryMongo mongo;
+	private MongoTemplate mongoTemplate;
+	private MongoIndexInitializer initializer;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		mongoTemplate = mongo.template();
+
+		initializer = new MongoIndexInitializer();
+		ReflectionTestUtils.setField(initializer, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(initializer, "mappingContext",
+				(MongoMappingContext) mongoTemplate.getConverter().getMappingContext());
+		ReflectionTestUtils.setField(initializer, "archiveRetentionDays", 365);
+		ReflectionTestUtils.setField(initializer, "retryMillis", 30_000L);
+	}
+
+	@AfterEach
+	void tearDown() {
+		mongo.close();
+	}
+
+	@Test
+	void healthIsUpOnceEveryIndexIsCreated() {
+		assertThat(initializer.health().getStatus()).isEqualTo(Status.UNKNOWN);
+
+		assertThat(initializer.ensureIndexes()).isTrue();
+
+		assertThat(initializer.health().getStatus()).isEqualTo(Status.UP);
+	}
+
+	@Test
+	void duplicateUsernamesKeepHealthDownUntilTheyAreRemoved() {
+		mongoTemplate.insert(new User("alice", "one"));
+		mongoTemplate.insert(new User("alice", "two"));
+
+		assertThat(initializer.ensureIndexes()).isFalse();
+		assertThat(initializer.health().getStatus()).isEqualTo(Status.DOWN);
+		assertThat(initializer.health().getDetails()).containsKey(mongoTemplate.getCollectionName(User.class));
+
+		mongoTemplate.remove(mongoTemplate.findAll(User.class).get(1));
+
+		assertThat(initializer.ensureIndexes()).isTrue();
+		assertThat(initializer.health().getStatus()).isEqualTo(Status.UP);
+	}
+}
@@ -0,0 +1,91 @@
+package com.example.chat.controller;
+
+import com.example.chat.service.ChatBroadcastService;
+import com.example.chat.service.MessageHistoryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ChatControllerTests {
+
+	private ChatBroadcastService chatBroadcastService;
+	private MessageHistoryService messageHistoryService;
+	private final List<Message<?>> brokerMessages = new ArrayList<>();
+	private SimpAnnotationMethodMessageHandler handler;
+
+	@BeforeEach
+	void setUp() {
+		chatBroadcastService = mock(ChatBroadcastService.class);
+		messageHistoryService = mock(MessageHistoryService.class);
+		ChatController controller = new ChatController();
+		ReflectionTestUtils.setField(controller, "chatBroadcastService", chatBroadcastService);
+		ReflectionTestUtils.setField(controller, "messageHistoryService", messageHistoryService);
+		ReflectionTestUtils.setField(controller, "meterRegistry", new SimpleMeterRegistry());
+		controller.registerMetrics();
+
+		// Routes messages to the controller the way the application's clientInboundChannel does.
+		ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel(); // Delivers on the caller's thread.
+		brokerChannel.subscribe(brokerMessages::add);
+		handler = new SimpAnnotationMethodMessageHandler(new ExecutorSubscribableChannel(),
+				new ExecutorSubscribableChannel(), new SimpMessagingTemplate(brokerChannel)) {
+			{
+				detectHandlerMethods(controller);
+			}
+		};
+		handler.setDestinationPrefixes(List.of("/app"));
+		handler.setMessageConverter(new MappingJackson2MessageConverter());
+		handler.afterPropertiesSet();
+	}
+
+	@Test
+	void aMessageToAValidRoomIsBroadcast() {
+		handler.handleMessage(send("/app/chat.room.team-1.sendMessage"));
+
+		verify(chatBroadcastService).broadcast(any());
+		verify(messageHistoryService).record(any());
+		assertThat(brokerMessages).isEmpty();
+	}
+
+	@Test
+	void aMessageToAnInvalidRoomIsAnsweredWithAnErrorToTheSenderOnly() {
+		handler.handleMessage(send("/app/chat.room.bad%room.sendMessage"));
+
+		verify(chatBroadcastService, never()).broadcast(any());
+		verify(messageHistoryService, never()).record(any());
+		assertThat(brokerMessages).singleElement().satisfies(reply -> {
+			assertThat(SimpMessageHeaderAccessor.getDestination(reply.getHeaders())).isEqualTo("/user/s1/queue/errors");
+			assertThat(reply.getPayload()).isEqualTo("Invalid room id: bad%room");
+		});
+	}
+
+	private static Message<byte[]> send(String destination) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		headers.setSessionId("s1");
+		headers.setSessionAttributes(new HashMap<>());
+		headers.setDestination(destination);
+		headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		byte[] payload = "{\"sender\":\"alice\",\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+		return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+	}
+}
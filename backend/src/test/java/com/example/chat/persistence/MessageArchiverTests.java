@@ -0,0 +1,81 @@
+package com.example.chat.persistence;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageBucket;
+import com.example.chat.repository.MessageRepositoryCustomImpl;
+import com.example.chat.support.InMemoryMongo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.example.chat.support.TestMessages.message;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageArchiverTests {
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+	private InMemoryMongo mongo;
+	private MongoTemplate mongoTemplate;
+	private MessageRepositoryCustomImpl repository;
+	private MessageArchiver archiver;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		mongoTemplate = mongo.template();
+		repository = mongo.messageStore(200, false);
+
+		archiver = new MessageArchiver();
+		ReflectionTestUtils.setField(archiver, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(archiver, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(archiver, "batchSize", 2);
+		ReflectionTestUtils.setField(archiver, "intervalMillis", 60000L); // Runs are triggered by the tests.
+		ReflectionTestUtils.invokeMethod(archiver, "start");
+	}
+
+	@AfterEach
+	void tearDown() {
+		archiver.stop();
+		mongo.close();
+	}
+
+	@Test
+	void bucketsOlderThanTheHotWindowMoveToTheArchive() {
+		for (int day = 10; day >= 0; day -= 2) {
+			repository.appendAll(List.of(message("day " + day, NOW.minusDays(day))));
+		}
+
+		assertThat(archiver.archiveOlderThan(NOW.minusDays(7))).isEqualTo(2); // Days 10 and 8, in two batches.
+
+		assertThat(mongoTemplate.count(new Query(), MessageBucket.class, MessageBucket.HOT_COLLECTION)).isEqualTo(4);
+		List<MessageBucket> archived = mongoTemplate.findAll(MessageBucket.class, MessageBucket.ARCHIVE_COLLECTION);
+		assertThat(archived).extracting(MessageBucket::getArchivedAt).doesNotContainNull();
+		// Reads span both collections.
+		assertThat(repository.findPage("public", null, null, 10)).extracting(Message::getContent)
+				.containsExactly("day 10", "day 8", "day 6", "day 4", "day 2", "day 0");
+	}
+
+	@Test
+	void anInterruptedMoveIsCompletedWithTheLatestCopyOfTheBucket() {
+		repository.appendAll(List.of(message("old", NOW.minusDays(9))));
+		MessageBucket bucket = mongoTemplate.findOne(new Query(), MessageBucket.class);
+		// An earlier run copied the bucket but stopped before the delete, and a late message arrived since.
+		bucket.setArchivedAt(NOW);
+		mongoTemplate.insert(bucket, MessageBucket.ARCHIVE_COLLECTION);
+		repository.appendAll(List.of(message("late", NOW.minusDays(9).plusSeconds(1))));
+
+		assertThat(archiver.archiveOlderThan(NOW.minusDays(7))).isEqualTo(1);
+
+		assertThat(mongoTemplate.count(new Query(), MessageBucket.class, MessageBucket.HOT_COLLECTION)).isZero();
+		assertThat(mongoTemplate.findById(bucket.getId(), MessageBucket.class, MessageBucket.ARCHIVE_COLLECTION).getCount())
+				.isEqualTo(2);
+	}
+}
@@ -0,0 +1,174 @@
+package com.example.chat.persistence;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageBucket;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.MessageRepositoryCustomImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.example.chat.support.InMemoryMongo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.chat.support.TestMessages.message;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageWriteBehindQueueTests {
+
+	@TempDir
+	Path tempDir;
+
+	private InMemoryMongo mongo;
+	private MongoTemplate mongoTemplate;
+	private MessageRepository messageRepository;
+	private ObjectMapper objectMapper;
+	private SimpleMeterRegistry meterRegistry;
+	private MessageWriteBehindQueue queue;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		mongoTemplate = mongo.template();
+		objectMapper = JsonMapper.builder().findAndAddModules().build();
+		meterRegistry = new SimpleMeterRegistry();
+
+		MessageRepositoryCustomImpl bucketStore = mongo.messageStore(200, true);
+		// The Spring Data repository proxy routes these methods to its custom implementation the same way.
+		messageRepository = Mockito.mock(MessageRepository.class, AdditionalAnswers.delegatesTo(bucketStore));
+
+		queue = new MessageWriteBehindQueue();
+		ReflectionTestUtils.setField(queue, "messageRepository", messageRepository);
+		ReflectionTestUtils.setField(queue, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(queue, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(queue, "capacity", 100);
+		ReflectionTestUtils.setField(queue, "batchSize", 10);
+		ReflectionTestUtils.setField(queue, "flushIntervalMs", 20L);
+		ReflectionTestUtils.setField(queue, "overflowPolicy", OverflowPolicy.BLOCK);
+		ReflectionTestUtils.setField(queue, "blockTimeoutMs", 1000L);
+		ReflectionTestUtils.setField(queue, "spillFile", tempDir.resolve("spill.jsonl").toString());
+		ReflectionTestUtils.setField(queue, "spillReplayIntervalMs", 50L);
+		ReflectionTestUtils.setField(queue, "shutdownTimeoutMs", 5000L);
+		queue.registerMeters();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (queue.isRunning()) {
+			queue.stop();
+		}
+		mongo.close();
+	}
+
+	@Test
+	void everyEnqueuedMessageIsPersistedInBatchesByShutdown() {
+		queue.start();
+		for (int i = 0; i < 25; i++) {
+			assertThat(queue.enqueue(message("message " + i))).isTrue();
+		}
+		queue.stop();
+
+		assertThat(messageRepository.findPage("public", null, null, 100)).hasSize(25);
+		// Batches go into shared bucket documents, not one document per message.
+		assertThat(mongoTemplate.count(new Query(), MessageBucket.class)).isBetween(1L, 10L);
+		assertThat(meterRegistry.get("chat.persistence.messages").tag("outcome", "persisted").counter().count()).isEqualTo(25);
+		// 25 messages with a batch size of 10 need at least three bulk writes, but never one per message.
+		long flushes = meterRegistry.get("chat.persistence.flush.latency").timer().count();
+		assertThat(flushes).isBetween(3L, 24L);
+	}
+
+	@Test
+	void spilledMessagesAreReplayedAndDuplicatesReadOnce() throws Exception {
+		Message alreadyStored = message("already stored");
+		messageRepository.appendAll(List.of(alreadyStored));
+		Message spilledOnly = message("spilled");
+		Path spillFile = tempDir.resolve("spill.jsonl");
+		Files.write(spillFile, List.of(
+				objectMapper.writeValueAsString(alreadyStored),
+				objectMapper.writeValueAsString(spilledOnly)));
+
+		queue.start();
+		queue.stop();
+
+		assertThat(messageRepository.findPage("public", null, null, 10)).extracting(Message::getId)
+				.containsExactly(alreadyStored.getId(), spilledOnly.getId());
+		assertThat(spillFile).doesNotExist();
+		assertThat(tempDir.resolve("spill.jsonl.replaying")).doesNotExist();
+	}
+
+	@Test
+	void aTruncatedSpillLineIsRejectedWithoutBlockingLaterReplays() throws Exception {
+		Message beforeCrash = message("before the crash");
+		String cutOff = objectMapper.writeValueAsString(message("cut off by the crash"));
+		Path spillFile = tempDir.resolve("spill.jsonl");
+		Files.writeString(spillFile, objectMapper.writeValueAsString(beforeCrash) + "\n"
+				+ cutOff.substring(0, cutOff.length() / 2)); // No newline: the append was interrupted.
+
+		queue.start();
+		queue.stop();
+
+		assertThat(messageRepository.findPage("public", null, null, 10)).extracting(Message::getId)
+				.containsExactly(beforeCrash.getId());
+		assertThat(tempDir.resolve("spill.jsonl.replaying")).doesNotExist();
+		assertThat(Files.readAllLines(tempDir.resolve("spill.jsonl.rejected")))
+				.containsExactly(cutOff.substring(0, cutOff.length() / 2));
+		assertThat(meterRegistry.get("chat.persistence.messages").tag("outcome", "rejected").counter().count()).isEqualTo(1);
+
+		// A message spilled after an interrupted append starts on a line of its own.
+		Message afterCrash = message("after the crash");
+		Files.writeString(spillFile, cutOff.substring(0, 10));
+		ReflectionTestUtils.invokeMethod(queue, "spill", List.of(afterCrash));
+		queue.start();
+		queue.stop();
+
+		assertThat(messageRepository.findPage("public", null, null, 10)).extracting(Message::getId)
+				.containsExactly(beforeCrash.getId(), afterCrash.getId());
+		assertThat(spillFile).doesNotExist();
+	}
+
+	@Test
+	void aMessageOfferedWhileStoppingIsStillPersisted() throws Exception {
+		queue.start();
+		// The sender checks that the queue is running, then is held up until shutdown is over before its offer.
+		CountDownLatch offering = new CountDownLatch(1);
+		CountDownLatch stopped = new CountDownLatch(1);
+		ReflectionTestUtils.setField(queue, "queue", new ArrayBlockingQueue<Message>(100) {
+			@Override
+			public boolean offer(Message message) {
+				offering.countDown();
+				try {
+					stopped.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.offer(message);
+			}
+		});
+		Message late = message("sent during shutdown");
+		CompletableFuture<Boolean> sent = CompletableFuture.supplyAsync(() -> queue.enqueue(late));
+		assertThat(offering.await(5, TimeUnit.SECONDS)).isTrue();
+
+		queue.stop();
+		stopped.countDown();
+
+		assertThat(sent.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(messageRepository.findPage("public", null, null, 10)).extracting(Message::getId)
+				.containsExactly(late.getId());
+		assertThat(queue.getQueueDepth()).isZero();
+	}
+}
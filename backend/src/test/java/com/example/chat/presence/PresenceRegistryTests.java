@@ -0,0 +1,77 @@
+package com.example.chat.presence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PresenceRegistryTests {
+
+	private final PresenceRegistry registry = new PresenceRegistry();
+
+	@Test
+	void userStaysOnlineUntilTheirLastSessionCloses() {
+		assertThat(registry.sessionJoined("s1", "alice")).isTrue();
+		assertThat(registry.sessionJoined("s2", "alice")).isFalse(); // A second tab.
+
+		assertThat(registry.sessionClosed("s1")).isNull();
+		assertThat(registry.isOnline("alice")).isTrue();
+		assertThat(registry.sessionClosed("s2")).isEqualTo("alice");
+		assertThat(registry.isOnline("alice")).isFalse();
+		assertThat(registry.sessionClosed("unknown")).isNull();
+	}
+
+	@Test
+	void aJoinArrivingAfterItsSessionClosedIsIgnored() {
+		assertThat(registry.sessionClosed("s1")).isNull(); // The disconnect event overtook the queued chat.addUser.
+		assertThat(registry.sessionJoined("s1", "alice")).isFalse();
+		assertThat(registry.isOnline("alice")).isFalse();
+		assertThat(registry.drainChanges()).isNull();
+
+		assertThat(registry.sessionJoined("s2", "alice")).isTrue(); // A new session of the same user still counts.
+		assertThat(registry.drainChanges().getJoined()).containsExactly("alice");
+	}
+
+	@Test
+	void changesWithinATickAreCoalescedIntoOneUpdate() {
+		for (int i = 0; i < 1000; i++) {
+			registry.sessionJoined("s" + i, "user" + (i % 100));
+		}
+		registry.sessionJoined("x", "bob");
+		registry.sessionClosed("x"); // Gone before anyone was told.
+
+		PresenceUpdate update = registry.drainChanges();
+		assertThat(update.getSequence()).isEqualTo(1);
+		assertThat(update.getJoined()).hasSize(100).doesNotContain("bob");
+		assertThat(update.getLeft()).isEmpty();
+		assertThat(registry.drainChanges()).isNull();
+
+		// A reconnect storm: everyone drops and comes back between two ticks.
+		for (int i = 0; i < 1000; i++) {
+			registry.sessionClosed("s" + i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			registry.sessionJoined("r" + i, "user" + (i % 100));
+		}
+		assertThat(registry.drainChanges()).isNull();
+	}
+
+	@Test
+	void snapshotMatchesThePublishedUpdates() {
+		registry.sessionJoined("s1", "bob");
+		registry.sessionJoined("s2", "alice");
+		registry.drainChanges();
+		registry.sessionClosed("s1");
+		registry.sessionJoined("s3", "carol");
+
+		// Not published yet, so not in the snapshot either.
+		PresenceSnapshot before = registry.snapshot();
+		assertThat(before.getSequence()).isEqualTo(1);
+		assertThat(before.getOnline()).containsExactly("alice", "bob");
+
+		PresenceUpdate update = registry.drainChanges();
+		assertThat(update.getSequence()).isEqualTo(2);
+		assertThat(update.getJoined()).containsExactly("carol");
+		assertThat(update.getLeft()).containsExactly("bob");
+		assertThat(registry.snapshot().getOnline()).containsExactly("alice", "carol");
+	}
+}
@@ -0,0 +1,209 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageBucket;
+import com.example.chat.model.MessageCursor;
+import com.example.chat.support.InMemoryMongo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.example.chat.support.TestMessages.contents;
+import static com.example.chat.support.TestMessages.message;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageRepositoryCustomImplTests {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	private InMemoryMongo mongo;
+	private MongoTemplate mongoTemplate;
+	private MessageRepositoryCustomImpl repository;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		mongoTemplate = mongo.template();
+		repository = mongo.messageStore(3, true);
+		ReflectionTestUtils.setField(repository, "streamBatchSize", 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		mongo.close();
+	}
+
+	@Test
+	void newestPageIsReturnedOldestFirst() {
+		List<Message> all = insertMessages(5);
+
+		List<Message> page = repository.findPage("public", null, null, 2);
+
+		assertThat(contents(page)).containsExactly(all.get(3).getContent(), all.get(4).getContent());
+	}
+
+	@Test
+	void beforeAndAfterCursorsWalkTheHistoryWithoutGaps() {
+		List<Message> all = insertMessages(7);
+
+		List<Message> walkedBackwards = new ArrayList<>(repository.findPage("public", null, null, 3));
+		List<Message> older = walkedBackwards;
+		while (!older.isEmpty()) {
+			older = repository.findPage("public", MessageCursor.of(older.get(0)), null, 3);
+			walkedBackwards.addAll(0, older);
+		}
+		assertThat(contents(walkedBackwards)).isEqualTo(contents(all));
+
+		List<Message> newer = repository.findPage("public", null, MessageCursor.of(all.get(1)), 3);
+		assertThat(contents(newer)).isEqualTo(contents(all.subList(2, 5)));
+	}
+
+	@Test
+	void messagesSharingATimestampAreOrderedById() {
+		Message first = message("first", START);
+		Message second = message("second", START);
+		mongoTemplate.insert(second);
+		mongoTemplate.insert(first);
+
+		assertThat(contents(repository.findPage("public", MessageCursor.of(second), null, 10))).containsExactly("first");
+		assertThat(contents(repository.findPage("public", null, MessageCursor.of(first), 10))).containsExactly("second");
+	}
+
+	@Test
+	void streamReturnsEveryMessageInOrder() {
+		List<Message> all = insertMessages(5);
+
+		try (Stream<Message> stream = repository.streamAllOrdered("public")) {
+			assertThat(stream.map(Message::getContent).collect(Collectors.toList())).isEqualTo(contents(all));
+		}
+	}
+
+	@Test
+	void roomsAreKeptApartAndLegacyMessagesBelongToThePublicRoom() {
+		List<Message> legacy = insertMessages(2); // Stored before rooms existed, so without a roomId.
+		Message inRoom = message("in room", START.plusSeconds(10));
+		inRoom.setRoomId("dev");
+		mongoTemplate.insert(inRoom);
+		Message inPublic = message("in public", START.plusSeconds(11));
+		inPublic.setRoomId("public");
+		mongoTemplate.insert(inPublic);
+
+		assertThat(contents(repository.findPage("dev", null, null, 10))).containsExactly("in room");
+		assertThat(contents(repository.findPage("public", null, null, 10)))
+				.containsExactly(legacy.get(0).getContent(), legacy.get(1).getContent(), "in public");
+	}
+
+	@Test
+	void appendedMessagesFillBucketsOfTheirRoomAndWindow() {
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			messages.add(message("message " + i, START.plusMinutes(i)));
+		}
+		Message nextHour = message("next hour", START.plusHours(1));
+		Message otherRoom = message("other room", START);
+		otherRoom.setRoomId("dev");
+		messages.add(nextHour);
+		messages.add(otherRoom);
+
+		assertThat(repository.appendAll(messages.subList(0, 4))).isEmpty();
+		assertThat(repository.appendAll(messages.subList(4, 9))).isEmpty();
+
+		// 7 messages of one window at 3 per bucket, and one bucket each for the next window and the other room.
+		List<MessageBucket> buckets = mongoTemplate.findAll(MessageBucket.class);
+		assertThat(buckets).extracting(MessageBucket::getCount).containsExactlyInAnyOrder(3, 3, 1, 1, 1);
+		assertThat(mongoTemplate.count(new Query(Criteria.where("roomId").is("public").and("start").is(START)),
+				MessageBucket.class)).isEqualTo(3);
+		assertThat(contents(repository.findPage("dev", null, null, 10))).containsExactly("other room");
+	}
+
+	@Test
+	void pagesAndStreamSpanHotArchivedAndLegacyMessagesWithoutDuplicates() {
+		List<Message> legacy = insertMessages(3);
+		List<Message> archived = new ArrayList<>();
+		List<Message> hot = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			archived.add(message("archived " + i, START.plusMinutes(10 + i)));
+			hot.add(message("hot " + i, START.plusHours(2).plusMinutes(i)));
+		}
+		repository.appendAll(archived);
+		mongoTemplate.findAll(MessageBucket.class).forEach(bucket ->
+				mongoTemplate.insert(bucket, MessageBucket.ARCHIVE_COLLECTION));
+		mongoTemplate.remove(new Query(), MessageBucket.class);
+		// Stored again after a retry, and caught mid-archival in both collections: still listed once.
+		repository.appendAll(List.of(archived.get(3)));
+		repository.appendAll(hot);
+		repository.appendAll(List.of(legacy.get(2)));
+
+		List<Message> all = new ArrayList<>(legacy);
+		all.addAll(archived);
+		all.addAll(hot);
+		List<Message> walkedBackwards = new ArrayList<>(repository.findPage("public", null, null, 3));
+		List<Message> older = walkedBackwards;
+		while (!older.isEmpty()) {
+			older = repository.findPage("public", MessageCursor.of(older.get(0)), null, 3);
+			walkedBackwards.addAll(0, older);
+		}
+		assertThat(contents(walkedBackwards)).isEqualTo(contents(all));
+		assertThat(walkedBackwards).extracting(Message::getRoomId).containsOnly("public", null);
+
+		assertThat(contents(repository.findPage("public", null, MessageCursor.of(archived.get(2)), 3)))
+				.containsExactly("archived 3", "hot 0", "hot 1");
+		try (Stream<Message> stream = repository.streamAllOrdered("public")) {
+			assertThat(stream.map(Message::getContent).collect(Collectors.toList())).isEqualTo(contents(all));
+		}
+	}
+
+	@Test
+	void bulkReadsReturnEveryTierWithRoomIdsAndSkipLegacyMessagesWhenBoundedByTime() {
+		insertMessages(2);
+		Message archived = message("archived", START.plusHours(1));
+		repository.appendAll(List.of(archived));
+		mongoTemplate.findAll(MessageBucket.class).forEach(bucket ->
+				mongoTemplate.insert(bucket, MessageBucket.ARCHIVE_COLLECTION));
+		mongoTemplate.remove(new Query(), MessageBucket.class);
+		Message inRoom = message("in room", START.plusHours(2).plusMinutes(1));
+		inRoom.setRoomId("dev");
+		Message sameBucketButOlder = message("older", START.plusHours(2));
+		sameBucketButOlder.setRoomId("dev");
+		repository.appendAll(List.of(sameBucketButOlder, inRoom));
+
+		List<Stream<Message>> tiers = repository.streamAllByTier(null);
+		List<Message> all = tiers.stream().flatMap(tier -> tier).collect(Collectors.toList());
+		tiers.forEach(Stream::close);
+		assertThat(tiers).hasSize(3); // Hot, archive and legacy.
+		assertThat(all).extracting(Message::getContent)
+				.containsExactlyInAnyOrder("message 0", "message 1", "archived", "older", "in room");
+		assertThat(all).extracting(Message::getRoomId).containsOnly("public", "dev");
+
+		List<Stream<Message>> recent = repository.streamAllByTier(inRoom.getTimestamp());
+		assertThat(recent).hasSize(2);
+		assertThat(recent.stream().flatMap(tier -> tier)).extracting(Message::getContent).containsExactly("in room");
+		recent.forEach(Stream::close);
+	}
+
+	private List<Message> insertMessages(int count) {
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Message message = message("message " + i, START.plusSeconds(i));
+			message.setRoomId(null); // Stored before rooms existed.
+			messages.add(message);
+		}
+		// Insert out of order so the tests prove the queries sort rather than relying on insertion order.
+		List<Message> shuffled = new ArrayList<>(messages);
+		Collections.reverse(shuffled);
+		shuffled.forEach(mongoTemplate::insert);
+		return messages;
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.example.chat.search;
+
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.stream.Stream;
+
+import static com.example.chat.support.TestMessages.contents;
+import static com.example.chat.support.TestMessages.message;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageSearchIndexTests {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+	@TempDir
+	Path indexDir;
+
+	private final MessageRepository repository = mock(MessageRepository.class);
+	private MessageSearchIndex index;
+
+	@AfterEach
+	void tearDown() {
+		if (index.isRunning()) {
+			index.stop();
+		}
+	}
+
+	@Test
+	void sentMessagesAreSearchableByTextSenderRoomAndTimeNewestFirst() throws InterruptedException {
+		index = start();
+		index.enqueue(message("alice", "public", "The deploy went fine", START));
+		index.enqueue(message("bob", "public", "Deploying the fix now", START.plusMinutes(1)));
+		index.enqueue(message("alice", "dev", "deploy the fix to staging", START.plusMinutes(2)));
+		index.enqueue(message("bob", "public", "lunch?", START.plusMinutes(3)));
+
+		awaitResults("lunch", null, null, null, null, 1); // Indexed in order, so everything else is searchable too.
+
+		assertThat(contents(index.search("fix", null, null, null, null, 10)))
+				.containsExactly("deploy the fix to staging", "Deploying the fix now");
+		assertThat(contents(index.search("deploy", null, "alice", null, null, 10)))
+				.containsExactly("deploy the fix to staging", "The deploy went fine");
+		assertThat(contents(index.search("deploy", "public", null, null, null, 10)))
+				.containsExactly("The deploy went fine");
+		assertThat(contents(index.search("deploy*", null, null, START.plusMinutes(1), START.plusMinutes(1), 10)))
+				.containsExactly("Deploying the fix now");
+		assertThat(contents(index.search("\"fix now\"", null, null, null, null, 10))).containsExactly("Deploying the fix now");
+		assertThat(contents(index.search("deploy -staging", null, null, null, null, 1))).containsExactly("The deploy went fine");
+
+		Message found = index.search("LUNCH", null, null, null, null, 10).get(0);
+		assertThat(found.getSender()).isEqualTo("bob");
+		assertThat(found.getRoomId()).isEqualTo("public");
+		assertThat(found.getTimestamp()).isEqualTo(START.plusMinutes(3));
+	}
+
+	@Test
+	void anEmptyIndexIsRebuiltFromEveryTierAndLaterOnlyCatchesUp() {
+		List<Message> hot = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			hot.add(message("alice", "public", "hot message " + i, START.plusMinutes(i)));
+		}
+		Message archived = message("bob", "dev", "archived message", START.minusDays(30));
+		when(repository.streamAllByTier(isNull())).thenReturn(List.of(hot.stream(), Stream.of(archived)));
+
+		index = start();
+		assertThat(index.load()).isEqualTo(26);
+		assertThat(index.search("message", null, null, null, null, 100)).hasSize(26);
+		assertThat(contents(index.search("message", "dev", null, null, null, 100))).containsExactly("archived message");
+		index.stop();
+
+		// The complete index survives a restart and only reads what was stored since (shortly before) its last commit.
+		when(repository.streamAllByTier(any(LocalDateTime.class)))
+				.thenReturn(List.of(Stream.of(hot.get(24), message("alice", "public", "new message", LocalDateTime.now()))));
+		index = start();
+		assertThat(index.load()).isEqualTo(2);
+		assertThat(index.search("message", null, null, null, null, 100)).hasSize(27); // The re-read message is kept once.
+		verify(repository).streamAllByTier(isNull());
+		verify(repository).streamAllByTier(any(LocalDateTime.class));
+	}
+
+	@Test
+	void catchUpStartsBeforeTheNewestIndexedMessageOrTheOldestDroppedOne() {
+		List<Message> stored = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			stored.add(message("alice", "public", "stored message " + i, START.plusMinutes(i)));
+		}
+		when(repository.streamAllByTier(isNull())).thenReturn(List.of(stored.stream()));
+		index = start();
+		index.load();
+		index.stop();
+
+		// Measured on the message timestamps, whatever the host's time zone or clock.
+		when(repository.streamAllByTier(any(LocalDateTime.class))).thenReturn(List.of(Stream.empty()));
+		index = start();
+		index.load();
+		verify(repository).streamAllByTier(eq(START.plusMinutes(9).minusMinutes(5)));
+
+		// A message that could not be queued is read again by the next start's catch-up.
+		ReflectionTestUtils.setField(index, "queue", new ArrayBlockingQueue<Message>(1) {
+			@Override
+			public boolean offer(Message message) {
+				return false; // Always full.
+			}
+		});
+		index.enqueue(message("bob", "public", "dropped", START.plusMinutes(2)));
+		index.stop();
+
+		Message dropped = message("bob", "public", "dropped", START.plusMinutes(2));
+		when(repository.streamAllByTier(eq(START.plusMinutes(2).minusMinutes(5)))).thenReturn(List.of(Stream.of(dropped)));
+		index = start();
+		assertThat(index.load()).isEqualTo(1);
+		assertThat(contents(index.search("dropped", null, null, null, null, 10))).containsExactly("dropped");
+	}
+
+	@Test
+	void anInterruptedRebuildStartsOverOnTheNextStart() throws InterruptedException {
+		index = start();
+		index.enqueue(message("alice", "public", "sent before the rebuild finished", START));
+		awaitResults("sent", null, null, null, null, 1);
+		index.stop(); // Committed, but not yet complete.
+
+		when(repository.streamAllByTier(isNull())).thenReturn(List.of(Stream.of(message("bob", "public", "stored", START))));
+		index = start();
+		assertThat(index.search("sent", null, null, null, null, 10)).isEmpty();
+		index.load();
+		assertThat(contents(index.search("stored", null, null, null, null, 10))).containsExactly("stored");
+	}
+
+	private MessageSearchIndex start() {
+		MessageSearchIndex started = new MessageSearchIndex();
+		ReflectionTestUtils.setField(started, "messageRepository", repository);
+		ReflectionTestUtils.setField(started, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(started, "indexDir", indexDir.toString());
+		ReflectionTestUtils.setField(started, "queueCapacity", 100);
+		ReflectionTestUtils.setField(started, "refreshMs", 10L);
+		ReflectionTestUtils.setField(started, "commitIntervalMs", 60000L); // Commits happen on stop and after a load.
+		ReflectionTestUtils.setField(started, "rebuildThreads", 2);
+		ReflectionTestUtils.setField(started, "rebuildBatchSize", 10);
+		started.start();
+		return started;
+	}
+
+	// Waits for the background indexer and the next refresh.
+	private List<Message> awaitResults(String text, String roomId, String sender, LocalDateTime from,
+									   LocalDateTime to, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		List<Message> results = index.search(text, roomId, sender, from, to, 100);
+		while (results.size() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			results = index.search(text, roomId, sender, from, to, 100);
+		}
+		return results;
+	}
+}
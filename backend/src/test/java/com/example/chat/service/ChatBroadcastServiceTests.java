@@ -0,0 +1,96 @@
+package com.example.chat.service;
+
+import com.example.chat.cluster.LoopbackClusterRelay;
+import com.example.chat.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.example.chat.support.TestMessages.message;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ChatBroadcastServiceTests {
+
+	private final LoopbackClusterRelay.Hub hub = new LoopbackClusterRelay.Hub();
+	private Node nodeA;
+	private Node nodeB;
+
+	@BeforeEach
+	void setUp() {
+		nodeA = new Node("a", hub);
+		nodeB = new Node("b", hub);
+	}
+
+	@AfterEach
+	void tearDown() {
+		nodeA.service.stopClusterRelay();
+		nodeB.service.stopClusterRelay();
+	}
+
+	@Test
+	void broadcastsReachSubscribersOnEveryNodeOnce() {
+		Message message = message("alice", "dev", "hello", LocalDateTime.now());
+
+		nodeA.service.broadcast(message);
+
+		assertThat(nodeA.sent).containsExactly("/topic/room.dev");
+		assertThat(nodeB.sent).containsExactly("/topic/room.dev");
+		verify(nodeB.history).recordReplica(message); // Cached on the peer, persisted only by the origin.
+		verify(nodeA.history, never()).recordReplica(message);
+	}
+
+	@Test
+	void noticesAreBroadcastButNotCachedByPeers() {
+		Message notice = message("joined!", LocalDateTime.now());
+
+		nodeB.service.announce(notice);
+
+		assertThat(nodeA.sent).containsExactly("/topic/public");
+		verify(nodeA.history, never()).recordReplica(notice);
+	}
+
+	@Test
+	void relayedBroadcastsKeepTheOriginsOrder() {
+		for (int i = 0; i < 20; i++) {
+			nodeA.service.broadcast(message("m" + i));
+		}
+
+		assertThat(nodeB.contents).containsExactlyElementsOf(nodeA.contents);
+		assertThat(nodeB.contents).hasSize(20);
+	}
+
+	// One backend node: a broadcast service whose local WebSocket sends are recorded.
+	private static final class Node {
+		final List<String> sent = new CopyOnWriteArrayList<>();
+		final List<String> contents = new CopyOnWriteArrayList<>();
+		final MessageHistoryService history = mock(MessageHistoryService.class);
+		final ChatBroadcastService service = new ChatBroadcastService();
+
+		Node(String nodeId, LoopbackClusterRelay.Hub hub) {
+			SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+				sent.add(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+				contents.add(((Message) message.getPayload()).getContent());
+				return true;
+			});
+			ReflectionTestUtils.setField(service, "messagingTemplate", template);
+			ReflectionTestUtils.setField(service, "messageHistoryService", history);
+			ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+			ReflectionTestUtils.setField(service, "clusterRelay", new LoopbackClusterRelay(hub));
+			ReflectionTestUtils.setField(service, "nodeId", nodeId);
+			ReflectionTestUtils.setField(service, "dedupeCapacity", 1000);
+			ReflectionTestUtils.setField(service, "gapTimeoutMillis", 2000L);
+			service.startClusterRelay();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.example.chat.service;
+
+import com.example.chat.auth.PasswordHasher;
+import com.example.chat.model.User;
+import com.example.chat.repository.UserRepository;
+import com.example.chat.support.InMemoryMongo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserServiceTests {
+
+	private InMemoryMongo mongo;
+	private UserRepository userRepository;
+	private PasswordHasher passwordHasher;
+	private UserService userService;
+
+	@BeforeEach
+	void setUp() {
+		mongo = new InMemoryMongo();
+		MongoTemplate mongoTemplate = mongo.template();
+		MongoMappingContext mappingContext = (MongoMappingContext) mongoTemplate.getConverter().getMappingContext();
+		new MongoPersistentEntityIndexResolver(mappingContext).resolveIndexFor(User.class)
+				.forEach(mongoTemplate.indexOps(User.class)::ensureIndex);
+		userRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+
+		passwordHasher = new PasswordHasher();
+		ReflectionTestUtils.setField(passwordHasher, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(passwordHasher, "strength", 4); // The cheapest cost, to keep the tests fast.
+		ReflectionTestUtils.setField(passwordHasher, "queueCapacity", 100);
+		ReflectionTestUtils.invokeMethod(passwordHasher, "start");
+
+		userService = new UserService();
+		ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+		ReflectionTestUtils.setField(userService, "passwordHasher", passwordHasher);
+		ReflectionTestUtils.setField(userService, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(userService, "ttlMillis", 30_000L);
+		ReflectionTestUtils.setField(userService, "negativeTtlMillis", 30_000L);
+		ReflectionTestUtils.setField(userService, "maxSize", 1000L);
+		ReflectionTestUtils.setField(userService, "storeThreads", 2);
+		ReflectionTestUtils.invokeMethod(userService, "start");
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.invokeMethod(passwordHasher, "stop");
+		ReflectionTestUtils.invokeMethod(userService, "stop");
+		mongo.close();
+	}
+
+	@Test
+	void registrationStoresAHashAndRejectsTakenUsernames() {
+		assertThat(userService.register("alice", "secret").join()).isTrue();
+
+		assertThat(userRepository.findByUsername("alice").orElseThrow().getPassword()).startsWith("$2");
+		assertThat(userService.register("alice", "other").join()).isFalse();
+		assertThat(userService.authenticate("alice", "secret").join()).isTrue();
+		assertThat(userService.authenticate("alice", "other").join()).isFalse();
+	}
+
+	@Test
+	void theUniqueIndexCatchesRegistrationsTheCacheDoesNotKnowAbout() {
+		assertThat(userService.findByUsername("bob")).isEmpty(); // Now cached as unknown.
+		userRepository.insert(new User("bob", "registered elsewhere"));
+
+		assertThat(userService.register("bob", "secret").join()).isFalse();
+		assertThat(userRepository.count()).isEqualTo(1);
+	}
+
+	@Test
+	void legacyPlainTextPasswordsAreHashedOnLogin() throws Exception {
+		userRepository.insert(new User("carol", "secret"));
+
+		assertThat(userService.authenticate("carol", "wrong").join()).isFalse();
+		assertThat(userService.authenticate("carol", "secret").join()).isTrue();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (passwordHasher.isLegacy(userRepository.findByUsername("carol").orElseThrow().getPassword())
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(userRepository.findByUsername("carol").orElseThrow().getPassword()).startsWith("$2");
+		assertThat(userService.authenticate("carol", "secret").join()).isTrue();
+	}
+}
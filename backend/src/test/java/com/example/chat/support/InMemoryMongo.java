@@ -0,0 +1,44 @@
+package com.example.chat.support;
+
+import com.example.chat.repository.MessageRepositoryCustomImpl;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * An in-memory MongoDB (mongo-java-server) with a client and template for the "chatdb" database.
+ * Create one per test and close it afterwards.
+ */
+public class InMemoryMongo implements AutoCloseable {
+
+	private final MongoServer server = new MongoServer(new MemoryBackend());
+	private final MongoClient client = MongoClients.create(server.bindAndGetConnectionString());
+	private final MongoTemplate template = new MongoTemplate(client, "chatdb");
+
+	public MongoTemplate template() {
+		return template;
+	}
+
+	/**
+	 * @param bucketMaxMessages Messages per bucket document.
+	 * @param legacyReads Whether the legacy one-document-per-message collection is read too.
+	 * @return The bucket store on this database, with one-hour buckets.
+	 */
+	public MessageRepositoryCustomImpl messageStore(int bucketMaxMessages, boolean legacyReads) {
+		MessageRepositoryCustomImpl store = new MessageRepositoryCustomImpl();
+		ReflectionTestUtils.setField(store, "mongoTemplate", template);
+		ReflectionTestUtils.setField(store, "bucketMinutes", 60);
+		ReflectionTestUtils.setField(store, "bucketMaxMessages", bucketMaxMessages);
+		ReflectionTestUtils.setField(store, "legacyReads", legacyReads);
+		return store;
+	}
+
+	@Override
+	public void close() {
+		client.close();
+		server.shutdownNow();
+	}
+}
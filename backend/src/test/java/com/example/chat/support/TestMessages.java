@@ -0,0 +1,40 @@
+package com.example.chat.support;
+
+import com.example.chat.model.Message;
+import org.bson.types.ObjectId;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Chat messages as they look once sent: with an id, a room and a timestamp.
+ */
+public final class TestMessages {
+
+	private TestMessages() {
+	}
+
+	public static Message message(String sender, String roomId, String content, LocalDateTime timestamp) {
+		Message message = new Message(sender, content);
+		message.setId(new ObjectId().toHexString());
+		message.setRoomId(roomId);
+		message.setTimestamp(timestamp);
+		return message;
+	}
+
+	// From alice, in the public room.
+	public static Message message(String content, LocalDateTime timestamp) {
+		return message("alice", "public", content, timestamp);
+	}
+
+	// From alice, in the public room, sent now (at MongoDB's millisecond precision).
+	public static Message message(String content) {
+		return message(content, LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+	}
+
+	public static List<String> contents(List<Message> messages) {
+		return messages.stream().map(Message::getContent).collect(Collectors.toList());
+	}
+}
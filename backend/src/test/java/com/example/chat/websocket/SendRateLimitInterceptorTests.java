@@ -0,0 +1,62 @@
+package com.example.chat.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendRateLimitInterceptorTests {
+
+	private SendRateLimitInterceptor interceptor;
+
+	@BeforeEach
+	void setUp() {
+		interceptor = new SendRateLimitInterceptor();
+		ReflectionTestUtils.setField(interceptor, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(interceptor, "messagesPerSecond", 0.001); // Practically no refill.
+		ReflectionTestUtils.setField(interceptor, "burst", 2);
+		ReflectionTestUtils.invokeMethod(interceptor, "start");
+	}
+
+	@Test
+	void aClaimedUsernameDoesNotShareItsBudgetWithOtherSessions() {
+		assertThat(interceptor.preSend(chatMessage("s1", "alice"), null)).isNotNull();
+		assertThat(interceptor.preSend(chatMessage("s1", "alice"), null)).isNotNull();
+		assertThat(interceptor.preSend(chatMessage("s1", "alice"), null)).isNull();
+
+		// Another connection claiming the same name is neither limited by, nor able to drain, the first one.
+		assertThat(interceptor.preSend(chatMessage("s2", "alice"), null)).isNotNull();
+		assertThat(interceptor.preSend(chatMessage("s2", "alice"), null)).isNotNull();
+		assertThat(interceptor.preSend(chatMessage("s2", "alice"), null)).isNull();
+	}
+
+	@Test
+	void framesOtherThanChatMessagesAreNotLimited() {
+		for (int i = 0; i < 5; i++) {
+			SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+			headers.setSessionId("s1");
+			headers.setDestination("/app/chat.addUser");
+			assertThat(interceptor.preSend(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()),
+					null)).isNotNull();
+		}
+	}
+
+	private static Message<byte[]> chatMessage(String sessionId, String username) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		headers.setSessionId(sessionId);
+		headers.setDestination("/app/chat.sendMessage");
+		Map<String, Object> sessionAttributes = new HashMap<>();
+		sessionAttributes.put("username", username);
+		headers.setSessionAttributes(sessionAttributes);
+		return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+	}
+}
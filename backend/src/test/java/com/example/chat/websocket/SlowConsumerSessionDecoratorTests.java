@@ -0,0 +1,102 @@
+package com.example.chat.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SlowConsumerSessionDecoratorTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final Counter dropped = registry.counter("dropped");
+	private final Counter disconnected = registry.counter("disconnected");
+
+	// The first write blocks until released, like a client that stopped reading.
+	private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final List<String> written = new CopyOnWriteArrayList<>();
+
+	@Test
+	void dropPolicyDropsOldestBroadcastsAndMarksTheGap() throws Exception {
+		SlowConsumerSessionDecorator session = decorate(SlowConsumerPolicy.DROP, 60);
+		CompletableFuture<Void> blockedWrite = sendBlocked(session);
+
+		session.sendMessage(frame("MESSAGE", "1")); // 20 bytes each
+		session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:r\n\n\0"));
+		session.sendMessage(frame("MESSAGE", "2"));
+		session.sendMessage(frame("MESSAGE", "3")); // Over the limit: broadcast 1 is dropped.
+		session.sendMessage(frame("MESSAGE", "4")); // And broadcast 2.
+
+		release.countDown();
+		blockedWrite.get(5, TimeUnit.SECONDS);
+		session.sendMessage(frame("MESSAGE", "5"));
+
+		assertThat(written).containsExactly(
+				"MESSAGE\nid:0\n\n0\0",
+				"RECEIPT\nreceipt-id:r\n\n\0",
+				"MESSAGE\nx-dropped:2\nid:3\n\n3\0",
+				"MESSAGE\nid:4\n\n4\0",
+				"MESSAGE\nid:5\n\n5\0");
+		assertThat(dropped.count()).isEqualTo(2);
+		assertThat(disconnected.count()).isZero();
+	}
+
+	@Test
+	void disconnectPolicyClosesTheSessionOverTheLimit() throws Exception {
+		SlowConsumerSessionDecorator session = decorate(SlowConsumerPolicy.DISCONNECT, 30);
+		sendBlocked(session);
+
+		session.sendMessage(frame("MESSAGE", "1"));
+		assertThatThrownBy(() -> session.sendMessage(frame("MESSAGE", "2")))
+				.isInstanceOf(SessionLimitExceededException.class);
+		assertThat(disconnected.count()).isEqualTo(1);
+		assertThat(session.getBufferSize()).isZero();
+		release.countDown();
+	}
+
+	private SlowConsumerSessionDecorator decorate(SlowConsumerPolicy policy, int bufferSizeLimit) throws Exception {
+		WebSocketSession delegate = mock(WebSocketSession.class);
+		doAnswer(invocation -> {
+			WebSocketMessage<?> message = invocation.getArgument(0);
+			if (firstWriteStarted.getCount() > 0) {
+				firstWriteStarted.countDown();
+				release.await();
+			}
+			written.add((String) message.getPayload());
+			return null;
+		}).when(delegate).sendMessage(any());
+		return new SlowConsumerSessionDecorator(delegate, 60_000, bufferSizeLimit, policy, dropped, disconnected);
+	}
+
+	// Starts a write on another thread that blocks in the socket, so later frames are buffered.
+	private CompletableFuture<Void> sendBlocked(SlowConsumerSessionDecorator session) throws Exception {
+		CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+			try {
+				session.sendMessage(frame("MESSAGE", "0"));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		assertThat(firstWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+		return write;
+	}
+
+	private static TextMessage frame(String command, String id) {
+		return new TextMessage(command + "\nid:" + id + "\n\n" + id + "\0");
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.chat.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTests {
+
+	private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+	@Test
+	void allowsABurstThenTheSustainedRate() {
+		TokenBucket bucket = new TokenBucket(10, 5, now::get); // One token per 100 ms.
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(bucket.tryAcquire()).isTrue();
+		}
+		assertThat(bucket.tryAcquire()).isFalse();
+
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isFalse();
+
+		// A long pause refills the bucket, but never beyond its capacity.
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		int granted = 0;
+		while (bucket.tryAcquire()) {
+			granted++;
+		}
+		assertThat(granted).isEqualTo(5);
+	}
+
+	@Test
+	void concurrentCallersNeverGetMoreThanTheCapacity() throws Exception {
+		TokenBucket bucket = new TokenBucket(1, 1000, now::get); // The clock stands still: no refill.
+		AtomicInteger granted = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			threads.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 1000; i++) {
+					if (bucket.tryAcquire()) {
+						granted.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		threads.shutdown();
+		assertThat(threads.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(granted.get()).isEqualTo(1000);
+	}
+}
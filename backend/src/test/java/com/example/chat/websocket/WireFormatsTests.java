@@ -0,0 +1,40 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WireFormatsTests {
+
+	@Test
+	void transcodedCborHoldsTheSameDocumentInFewerBytes() throws Exception {
+		byte[] json = ("{\"id\":\"6630f1c2a9e4b53d1c2f8e11\",\"roomId\":\"public\",\"sender\":\"alice\","
+				+ "\"content\":\"Hello everyone!\",\"timestamp\":\"2024-05-01T12:30:15.123\"}").getBytes(StandardCharsets.UTF_8);
+
+		byte[] cbor = WireFormats.jsonToCbor(json);
+
+		JsonNode expected = new ObjectMapper().readTree(json);
+		assertThat(new CBORMapper().readTree(cbor)).isEqualTo(expected);
+		assertThat(cbor.length).isLessThan(json.length);
+	}
+
+	@Test
+	void onlyTheContentTypeHeaderMarksACborFrame() {
+		assertThat(WireFormats.isCborFrame(frame("MESSAGE\ndestination:/topic/public\ncontent-type:application/cbor\n\n")))
+				.isTrue();
+		assertThat(WireFormats.isCborFrame(frame("MESSAGE\r\ncontent-type:application/cbor;v=1\r\n\r\n"))).isTrue();
+		assertThat(WireFormats.isCborFrame(frame("MESSAGE\ncontent-type:application/json\n\ncontent-type:application/cbor\n")))
+				.isFalse();
+		assertThat(WireFormats.isCborFrame(frame("MESSAGE\ncontent-type:application/cbor-seq\n\n"))).isFalse();
+		assertThat(WireFormats.isCborFrame(frame("\n"))).isFalse(); // Heart-beat.
+	}
+
+	private static byte[] frame(String text) {
+		return (text + "\0").getBytes(StandardCharsets.UTF_8);
+	}
+}
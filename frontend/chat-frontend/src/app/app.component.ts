@@ -1,6 +1,6 @@
 import { Component, ElementRef, OnDestroy, OnInit, ViewChild } from '@angular/core';
 import { Subscription } from 'rxjs';
-import { ChatService } from '../services/chat.service';
+import { ChatService, PresenceUpdate } from '../services/chat.service';
 import { AuthService } from '../services/auth.service';
 
 interface Message {
@@ -28,6 +28,10 @@ export class AppComponent implements OnInit, OnDestroy{
 
   onlineUsers: Set<string> = new Set<string>();
   private messageSubscription: Subscription | undefined; // To hold WebSocket subscription
+  private presenceSubscription: Subscription | undefined; // Presence updates from /topic/presence
+  private connectionSubscription: Subscription | undefined; // Reloads the online users on every (re)connect
+  private presenceSequence: number = -1; // Sequence of the last applied presence update; -1 until a snapshot arrives
+  private pendingPresenceUpdates: PresenceUpdate[] = []; // Updates received while the snapshot is loading
 
   constructor(
     private chatService: ChatService,
@@ -49,6 +53,8 @@ export class AppComponent implements OnInit, OnDestroy{
     if (this.messageSubscription) {
       this.messageSubscription.unsubscribe(); // Unsubscribe to prevent memory leaks
     }
+    this.presenceSubscription?.unsubscribe();
+    this.connectionSubscription?.unsubscribe();
     this.chatService.disconnect(); // Disconnect WebSocket on component destruction
   }
 
@@ -107,27 +113,18 @@ export class AppComponent implements OnInit, OnDestroy{
       }
     });
 
-    // Connect to WebSocket and subscribe to public topic for both messages and presence
+    // Online users: a snapshot from GET /api/presence, kept current by the updates on /topic/presence.
+    this.presenceSubscription = this.chatService.getPresenceUpdates().subscribe(update => this.applyPresenceUpdate(update));
+    this.connectionSubscription = this.chatService.isConnected().subscribe(connected => {
+      if (connected) {
+        this.loadPresence(); // Updates may have been missed while disconnected.
+      }
+    });
+
+    // Connect to WebSocket and subscribe to the public topic for chat messages
     this.messageSubscription = this.chatService.connect(this.loggedInUsername).subscribe({
       next: (message: Message) => {
         console.log('Received WebSocket message:', message);
-        // New logic: Check for join/leave messages to update online users
-        if (message.content === 'joined!' && message.sender !== this.loggedInUsername) {
-          this.onlineUsers.add(message.sender); // Add user to set
-          console.log(`User ${message.sender} joined. Online users:`, Array.from(this.onlineUsers));
-        } else if (message.content === 'left!' && message.sender !== this.loggedInUsername) {
-          this.onlineUsers.delete(message.sender); // Remove user from set
-          console.log(`User ${message.sender} left. Online users:`, Array.from(this.onlineUsers));
-        } else if (message.content === 'onlineUsers:' && message.sender === 'System') {
-          // This handles initial online user list broadcast from backend if we implement it.
-          // For now, it's a placeholder, as the backend listener broadcasts 'joined!' on connect.
-          // We could make backend send full list to new joiners, but for simplicity,
-          // the 'joined!' broadcasts work well for dynamic updates.
-          const usersArray = JSON.parse(message.content.substring('onlineUsers:'.length));
-          this.onlineUsers = new Set(usersArray);
-          console.log('Initial online users received:', Array.from(this.onlineUsers));
-        }
-
         this.messages.push(message); // Always add message to the chat display
         this.scrollToBottom();
       },
@@ -142,6 +139,50 @@ export class AppComponent implements OnInit, OnDestroy{
   }
 
 
+  /**
+   * Replaces the online users with a fresh snapshot, then applies the updates that arrived in the meantime.
+   */
+  private loadPresence(): void {
+    this.presenceSequence = -1; // Buffer updates until the snapshot is here.
+    this.chatService.getPresence().subscribe({
+      next: (snapshot) => {
+        this.onlineUsers = new Set(snapshot.online);
+        if (this.loggedInUsername) {
+          this.onlineUsers.add(this.loggedInUsername);
+        }
+        this.presenceSequence = snapshot.sequence;
+        const pending = this.pendingPresenceUpdates;
+        this.pendingPresenceUpdates = [];
+        pending.forEach(update => this.applyPresenceUpdate(update));
+      },
+      error: (error) => {
+        console.error('Failed to load online users:', error);
+      }
+    });
+  }
+
+  /**
+   * Applies one presence update on top of the current online users.
+   * Updates already included in the snapshot are skipped; a gap in the sequence means one was missed,
+   * so the snapshot is loaded again.
+   */
+  private applyPresenceUpdate(update: PresenceUpdate): void {
+    if (this.presenceSequence < 0) {
+      this.pendingPresenceUpdates.push(update);
+      return;
+    }
+    if (update.sequence <= this.presenceSequence) {
+      return;
+    }
+    if (update.sequence > this.presenceSequence + 1) {
+      this.loadPresence();
+      return;
+    }
+    update.joined.forEach(user => this.onlineUsers.add(user));
+    update.left.filter(user => user !== this.loggedInUsername).forEach(user => this.onlineUsers.delete(user));
+    this.presenceSequence = update.sequence;
+  }
+
   /**
    * Sends a new chat message.
    */
@@ -166,6 +207,8 @@ export class AppComponent implements OnInit, OnDestroy{
     this.password = '';
     this.messages = []; // Clear messages on logout
     this.onlineUsers.clear();
+    this.presenceSubscription?.unsubscribe();
+    this.connectionSubscription?.unsubscribe();
     localStorage.removeItem('chatUsername'); // Remove stored username
     this.chatService.disconnect(); // Disconnect WebSocket
     alert('Logged out successfully.');
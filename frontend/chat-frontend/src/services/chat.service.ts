@@ -12,12 +12,26 @@ interface Message {
     timestamp?: string;
 }
 
+// Who came online and who went offline, as published by the backend on /topic/presence.
+export interface PresenceUpdate {
+    sequence: number;
+    joined: string[];
+    left: string[];
+}
+
+// Everyone online, as of the update with this sequence number (GET /api/presence).
+export interface PresenceSnapshot {
+    sequence: number;
+    online: string[];
+}
+
 @Injectable({
     providedIn: 'root'
 })
 export class ChatService {
     private stompClient: Client | null = null;
     private messageSubject: Subject<Message> = new Subject<Message>();
+    private presenceSubject: Subject<PresenceUpdate> = new Subject<PresenceUpdate>();
     private connectedSubject: ReplaySubject<boolean> = new ReplaySubject<boolean>(1); // To track WebSocket connection status
 
     // Base URL for your Spring Boot backend.
@@ -54,7 +68,6 @@ export class ChatService {
         // Define connection callbacks.
         this.stompClient.onConnect = (frame: any) => {
             console.log('Connected to WebSocket!');
-            this.connectedSubject.next(true); // Update connection status
 
             // Subscribe to the public chat topic ("/topic/public") to receive all chat messages.
             this.stompClient?.subscribe('/topic/public', (message: { body: string; }) => {
@@ -62,8 +75,15 @@ export class ChatService {
                 this.messageSubject.next(receivedMessage); // Emit the parsed message to subscribers
             });
 
+            // Subscribe to the batched presence updates ("/topic/presence") before the snapshot is fetched,
+            // so no update between the two is missed.
+            this.stompClient?.subscribe('/topic/presence', (message: { body: string; }) => {
+                this.presenceSubject.next(JSON.parse(message.body));
+            });
+
             // Send a "user joined" message to the server's application destination.
             this.stompClient?.publish({ destination: '/app/chat.addUser', body: JSON.stringify({ sender: username, content: 'joined!' }) });
+            this.connectedSubject.next(true); // Update connection status once the subscriptions are in place
         };
 
         // Define error handler for STOMP client.
@@ -120,6 +140,21 @@ export class ChatService {
         return this.http.get<Message[]>(`${this.API_BASE_URL}/api/messages`);
     }
 
+    /**
+     * Returns an Observable of the presence updates received over WebSocket.
+     */
+    getPresenceUpdates(): Observable<PresenceUpdate> {
+        return this.presenceSubject.asObservable();
+    }
+
+    /**
+     * Fetches everyone currently online via a REST API call to the backend.
+     * @returns An Observable of the online users and the sequence number of the last update they include.
+     */
+    getPresence(): Observable<PresenceSnapshot> {
+        return this.http.get<PresenceSnapshot>(`${this.API_BASE_URL}/api/presence`);
+    }
+
     /**
      * Returns an Observable that emits true when connected to WebSocket, false otherwise.
      */